@@ -2,13 +2,53 @@ package info.kgeorgiy.ja.denisov.arrayset;
 
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 public class ArraySet<E extends Comparable<E>> extends AbstractSet<E> implements NavigableSet<E> { // NOTE: comparable
 
-    private final List<E> list;
+    /**
+     * Memory layout used to search elements.
+     */
+    public enum Layout {
+        /** Binary search over the sorted array. */
+        SORTED,
+        /**
+         * Breadth-first copy of the array, see {@link Eytzinger}. An {@code ArraySet} copies only the top levels,
+         * the rest of the search is binary, since deeper probes dereference elements scattered over the heap anyway.
+         */
+        EYTZINGER,
+        /**
+         * Positions predicted from key values by a {@link LearnedIndex}, for keys of an integral type
+         * in natural order, other sets use {@link #SORTED} layout instead. Pays off for smoothly distributed keys,
+         * for heavily skewed ones most keys fall into a few segments and searches get slower than binary.
+         */
+        LEARNED
+    }
+
+    // top levels of the tree, small enough to stay in L1 cache
+    private static final int TREE_NODES = (1 << 11) - 1;
+
+    private static final int PARALLEL_CHUNK = 1 << 14;
+
+    // unsorted batches at least this many times smaller than the set are sorted, larger ones are searched key by key
+    private static final int SORTED_PROBES_RATIO = 4;
+
+    private final Object[] elements;
+
+    private final int from;
+
+    private final int to;
+
+    private final boolean reversed;
 
     private final Comparator<? super E> comparator;
 
+    private final Object[] tree;
+
+    private final LearnedIndex model;
+
     public ArraySet() {
         this(new ArrayList<>(), null);
     }
@@ -22,51 +62,97 @@ public class ArraySet<E extends Comparable<E>> extends AbstractSet<E> implements
     }
 
     public ArraySet(Collection<? extends E> collection, Comparator<? super E> comparator) {
-        TreeSet<E> treeSet = new TreeSet<>(comparator);
-        treeSet.addAll(collection);
-        this.list = new ArrayList<>(treeSet);
+        this(collection, comparator, Layout.SORTED);
+    }
+
+    public ArraySet(Collection<? extends E> collection, Comparator<? super E> comparator, Layout layout) {
+        this.elements = sortedDistinct(collection, comparator);
+        this.from = 0;
+        this.to = elements.length;
+        this.reversed = false;
         this.comparator = comparator;
+        this.tree = layout == Layout.EYTZINGER ? Eytzinger.layout(elements, elements.length, TREE_NODES) : null;
+        this.model = layout == Layout.LEARNED && integral(elements, comparator)
+                ? new LearnedIndex(i -> ((Number) elements[i]).longValue(), elements.length)
+                : null;
     }
 
     public ArraySet(List<E> collection, Comparator<? super E> comparator, int l, int r) {
-        this.list = collection.subList(l, r);
+        this(collection.subList(l, r).toArray(), comparator, null, null, 0, r - l, false);
+    }
+
+    /**
+     * Same as {@link #parallel(Collection, Comparator, ForkJoinPool)} in the common pool.
+     */
+    public static <E extends Comparable<E>> ArraySet<E> parallel(Collection<? extends E> collection,
+                                                                 Comparator<? super E> comparator) {
+        return parallel(collection, comparator, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the same set as {@link #ArraySet(Collection, Comparator)}, sorting, deduplicating and compacting
+     * elements on the threads of {@code pool} only. Besides the result it takes two temporary arrays
+     * of the collection size: its copy and the merge buffer of {@link Arrays#parallelSort}.
+     */
+    public static <E extends Comparable<E>> ArraySet<E> parallel(Collection<? extends E> collection,
+                                                                 Comparator<? super E> comparator,
+                                                                 ForkJoinPool pool) {
+        Object[] elements;
+        if (collection instanceof SortedSet<?> set && Objects.equals(set.comparator(), comparator)) {
+            elements = collection.toArray();
+        } else {
+            Object[] array = collection.toArray();
+            elements = pool.submit(() -> parallelSortedDistinct(array, order(comparator), pool.getParallelism())).join();
+        }
+        return new ArraySet<E>(elements, comparator, null, null, 0, elements.length, false);
+    }
+
+    // view of elements[from, to), sorted by comparator, iterated backwards if reversed
+    private ArraySet(Object[] elements, Comparator<? super E> comparator, Object[] tree, LearnedIndex model,
+                     int from, int to, boolean reversed) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
         this.comparator = comparator;
+        this.tree = tree;
+        this.model = model;
     }
 
     private int lowerIndex(E e) {
-        return realBinarySearch(e, false, false);
+        return realBinarySearch(e, reversed, false);
     }
 
     private int floorIndex(E e) {
-        return realBinarySearch(e, false, true);
+        return realBinarySearch(e, reversed, true);
     }
 
     private int ceilingIndex(E e) {
-        return realBinarySearch(e, true, true);
+        return realBinarySearch(e, !reversed, true);
     }
 
     private int higherIndex(E e) {
-        return realBinarySearch(e, true, false);
+        return realBinarySearch(e, !reversed, false);
     }
 
     @Override
     public E lower(E e) {
-        return get(lowerIndex(e));
+        return elementOrNull(lowerIndex(e));
     }
 
     @Override
     public E floor(E e) {
-        return get(floorIndex(e));
+        return elementOrNull(floorIndex(e));
     }
 
     @Override
     public E ceiling(E e) {
-        return get(ceilingIndex(e));
+        return elementOrNull(ceilingIndex(e));
     }
 
     @Override
     public E higher(E e) {
-        return get(higherIndex(e));
+        return elementOrNull(higherIndex(e));
     }
 
     @Override
@@ -81,17 +167,17 @@ public class ArraySet<E extends Comparable<E>> extends AbstractSet<E> implements
 
     @Override
     public Iterator<E> iterator() {
-        return Collections.unmodifiableList(list).iterator();
+        return iterator(reversed);
     }
 
     @Override
     public NavigableSet<E> descendingSet() {
-        return new ArraySet<>(list, Collections.reverseOrder(comparator));
-    } // NOTE: not O(1)
+        return new ArraySet<E>(elements, comparator, tree, model, from, to, !reversed);
+    }
 
     @Override
     public Iterator<E> descendingIterator() {
-        return descendingSet().iterator();
+        return iterator(!reversed);
     }
 
     @Override
@@ -99,34 +185,24 @@ public class ArraySet<E extends Comparable<E>> extends AbstractSet<E> implements
         if (compare(fromElement, toElement) > 0) {
             throw new IllegalArgumentException("fromElement is bigger than toElement");
         }
-
-        int l = fromInclusive ? ceilingIndex(fromElement) : higherIndex(fromElement);
-        int r = toInclusive ? floorIndex(toElement) : lowerIndex(toElement);
-        if (l > r) {
-            return new ArraySet<E>(comparator);
-        }
-        return new ArraySet<>(list, comparator, l, r + 1);
+        return reversed
+                ? view(lowBound(toElement, toInclusive), highBound(fromElement, fromInclusive))
+                : view(lowBound(fromElement, fromInclusive), highBound(toElement, toInclusive));
     }
 
     @Override
     public NavigableSet<E> headSet(E toElement, boolean inclusive) {
-        if (size() == 0 || compare(first(), toElement) > 0) {
-            return new ArraySet<E>(comparator);
-        }
-        return subSet(first(), true, toElement, inclusive);
+        return reversed ? view(lowBound(toElement, inclusive), to) : view(from, highBound(toElement, inclusive));
     }
 
     @Override
     public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
-        if (size() == 0 || compare(last(), fromElement) < 0) {
-            return new ArraySet<E>(comparator);
-        }
-        return subSet(fromElement, inclusive, last(), true);
+        return reversed ? view(from, highBound(fromElement, inclusive)) : view(lowBound(fromElement, inclusive), to);
     }
 
     @Override
     public Comparator<? super E> comparator() {
-        return comparator;
+        return reversed ? Collections.reverseOrder(comparator) : comparator;
     }
 
     @Override
@@ -149,7 +225,7 @@ public class ArraySet<E extends Comparable<E>> extends AbstractSet<E> implements
         if (size() == 0) {
             throw new NoSuchElementException("ArraySet is empty");
         }
-        return list.get(0);
+        return element(reversed ? to - 1 : from);
     }
 
     @Override
@@ -157,40 +233,532 @@ public class ArraySet<E extends Comparable<E>> extends AbstractSet<E> implements
         if (size() == 0) {
             throw new NoSuchElementException("ArraySet is empty");
         }
-        return list.get(size() - 1);
+        return element(reversed ? from : to - 1);
     }
 
     @Override
     public int size() {
-        return list.size();
+        return to - from;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public boolean contains(Object o) {
-        return Collections.binarySearch(list, (E) o, comparator) >= 0;
+        return binarySearch((E) o) >= 0;
     }
 
     public void clear() {
         throw new UnsupportedOperationException("ArraySet is immutable");
     }
 
+    /**
+     * Element at position {@code index} in the iteration order of this set.
+     */
+    public E get(int index) {
+        Objects.checkIndex(index, size());
+        return at(index);
+    }
+
+    /**
+     * Position of {@code e} in the iteration order of this set, or {@code -1} if it is not contained.
+     */
+    public int indexOf(E e) {
+        int index = binarySearch(e);
+        return index < 0 ? -1 : position(index);
+    }
+
+    /**
+     * Number of elements preceding {@code e} in the iteration order of this set, whether it is contained or not.
+     */
+    public int rank(E e) {
+        int index = ceilingIndex(e);
+        return from <= index && index < to ? position(index) : size();
+    }
+
+    /**
+     * Positions of {@code keys} in the iteration order of this set, {@code -1} for keys it does not contain.
+     * Same as {@link #indexOf} for each key, but sorted keys are answered in one galloping merge pass
+     * over this set. Unsorted keys are sorted first if there are several times fewer of them than elements,
+     * otherwise sorting costs more than it saves and they are searched one by one.
+     * If {@code parallel}, the sort and chunks of the batch run in the common pool.
+     */
+    public int[] indicesOf(List<? extends E> keys, boolean parallel) {
+        return lookup(keys, parallel, true);
+    }
+
+    /**
+     * Positions of ceilings of {@code keys} in the iteration order of this set, {@code -1} for keys without one.
+     * Computed like {@link #indicesOf(List, boolean)}.
+     */
+    public int[] ceilingIndices(List<? extends E> keys, boolean parallel) {
+        return lookup(keys, parallel, false);
+    }
+
+    /**
+     * Splits exactly in halves by position, so parallel streams over the set need no copying.
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return new IndexSpliterator(0, size());
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] array = Arrays.copyOfRange(elements, from, to);
+        if (reversed) {
+            Collections.reverse(Arrays.asList(array));
+        }
+        return array;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        if (!(c instanceof ArraySet<?> set) || !sameOrder(set)) {
+            return super.containsAll(c);
+        }
+        ArraySet<E> other = (ArraySet<E>) set;
+        int i = 0;
+        for (int j = 0; j < other.size(); j++) {
+            E e = other.at(j);
+            i = gallop(i, e);
+            if (i == size() || compare(at(i), e) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Elements of either set in one merge pass, an element of this set wins over an equal one of {@code other}.
+     */
+    public ArraySet<E> union(ArraySet<E> other) {
+        if (!sameOrder(other)) {
+            List<E> all = new ArrayList<>(this);
+            all.addAll(other);
+            return new ArraySet<>(all, comparator());
+        }
+        Object[] result = new Object[size() + other.size()];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size() && j < other.size()) {
+            int c = compare(at(i), other.at(j));
+            if (c <= 0) {
+                result[count++] = at(i++);
+                j += c == 0 ? 1 : 0;
+            } else {
+                result[count++] = other.at(j++);
+            }
+        }
+        while (i < size()) {
+            result[count++] = at(i++);
+        }
+        while (j < other.size()) {
+            result[count++] = other.at(j++);
+        }
+        return of(result, count);
+    }
+
+    /**
+     * Elements of this set also contained in {@code other}, the smaller set is walked and searched for in the larger.
+     */
+    public ArraySet<E> intersection(ArraySet<E> other) {
+        if (!sameOrder(other)) {
+            return filter(other, true);
+        }
+        boolean walkThis = size() <= other.size();
+        ArraySet<E> walked = walkThis ? this : other;
+        ArraySet<E> searched = walkThis ? other : this;
+        Object[] result = new Object[walked.size()];
+        int count = 0;
+        int i = 0;
+        for (int j = 0; j < walked.size(); j++) {
+            E e = walked.at(j);
+            i = searched.gallop(i, e);
+            if (i == searched.size()) {
+                break;
+            }
+            if (compare(searched.at(i), e) == 0) {
+                result[count++] = walkThis ? e : searched.at(i);
+            }
+        }
+        return of(result, count);
+    }
+
+    /**
+     * Elements of this set not contained in {@code other}.
+     */
+    public ArraySet<E> difference(ArraySet<E> other) {
+        if (!sameOrder(other)) {
+            return filter(other, false);
+        }
+        Object[] result = new Object[size()];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < size(); i++) {
+            E e = at(i);
+            j = other.gallop(j, e);
+            if (j == other.size() || compare(other.at(j), e) != 0) {
+                result[count++] = e;
+            }
+        }
+        return of(result, count);
+    }
+
     private int compare(E a, E b) {
+        return reversed ? compareElements(b, a) : compareElements(a, b);
+    }
+
+    private int compareElements(E a, E b) {
         if (comparator == null) {
             return a.compareTo(b);
         }
         return comparator.compare(a, b);
     }
 
-    private E get(int index) {
-        if (0 <= index && index < size()) {
-            return list.get(index);
+    // bounds are indices in elements array, which is sorted regardless of reversed
+    private int lowBound(E low, boolean inclusive) {
+        return realBinarySearch(low, true, inclusive);
+    }
+
+    private int highBound(E high, boolean inclusive) {
+        return realBinarySearch(high, false, inclusive) + 1;
+    }
+
+    private ArraySet<E> view(int l, int r) {
+        return new ArraySet<E>(elements, comparator, tree, model, l, Math.max(l, r), reversed);
+    }
+
+    private class IndexSpliterator implements Spliterator<E> {
+        private int position;
+        private final int end;
+
+        private IndexSpliterator(int position, int end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (position >= end) {
+                return false;
+            }
+            action.accept(at(position++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            while (position < end) {
+                action.accept(at(position++));
+            }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int middle = (position + end) >>> 1;
+            if (middle <= position) {
+                return null;
+            }
+            IndexSpliterator prefix = new IndexSpliterator(position, middle);
+            position = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super E> getComparator() {
+            return comparator();
+        }
+    }
+
+    private Iterator<E> iterator(boolean descending) {
+        return new Iterator<>() {
+            private int index = descending ? to - 1 : from;
+
+            @Override
+            public boolean hasNext() {
+                return descending ? index >= from : index < to;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return element(descending ? index-- : index++);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private E element(int index) {
+        return (E) elements[index];
+    }
+
+    // element at position i in the iteration order of this set
+    private E at(int i) {
+        return element(reversed ? to - 1 - i : from + i);
+    }
+
+    // position in the iteration order of elements[index]
+    private int position(int index) {
+        return reversed ? to - 1 - index : index - from;
+    }
+
+    // first position from i on of an element not less than key, found by doubling steps and then binary search
+    private int gallop(int i, E key) {
+        int step = 1;
+        int high = i;
+        while (high < size() && compare(at(high), key) < 0) {
+            i = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, size());
+        while (i < high) {
+            int middle = (i + high) >>> 1;
+            if (compare(at(middle), key) < 0) {
+                i = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return i;
+    }
+
+    private int[] lookup(List<? extends E> keys, boolean parallel, boolean exact) {
+        List<? extends E> probes = keys instanceof RandomAccess ? keys : new ArrayList<>(keys);
+        boolean ordered = sortedProbes(probes);
+        boolean merged = ordered || probes.size() <= size() / SORTED_PROBES_RATIO;
+        Probe<E>[] sorted = ordered || !merged ? null : sortProbes(probes, parallel);
+        int chunks = parallel
+                ? Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, probes.size() / PARALLEL_CHUNK))
+                : 1;
+        int[] result = new int[probes.size()];
+        IntStream range = IntStream.range(0, chunks);
+        range = parallel ? range.parallel() : range;
+        range.forEach(c -> {
+            int l = (int) ((long) probes.size() * c / chunks);
+            int r = (int) ((long) probes.size() * (c + 1) / chunks);
+            if (merged) {
+                merge(probes, sorted, l, r, result, exact);
+            } else {
+                for (int j = l; j < r; j++) {
+                    result[j] = exact ? indexOf(probes.get(j)) : ceilingPosition(probes.get(j));
+                }
+            }
+        });
+        return result;
+    }
+
+    // probe key with its position in the batch, so sorting does not go through the batch list
+    private record Probe<E>(E key, int index) {
+    }
+
+    private int ceilingPosition(E e) {
+        int index = ceilingIndex(e);
+        return from <= index && index < to ? position(index) : -1;
+    }
+
+    private boolean sortedProbes(List<? extends E> probes) {
+        for (int i = 1; i < probes.size(); i++) {
+            if (compare(probes.get(i - 1), probes.get(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Probe<E>[] sortProbes(List<? extends E> probes, boolean parallel) {
+        Probe<E>[] sorted = (Probe<E>[]) new Probe<?>[probes.size()];
+        Arrays.setAll(sorted, i -> new Probe<>(probes.get(i), i));
+        Comparator<Probe<E>> byKey = (a, b) -> compare(a.key(), b.key());
+        if (parallel) {
+            Arrays.parallelSort(sorted, byKey);
+        } else {
+            Arrays.sort(sorted, byKey);
+        }
+        return sorted;
+    }
+
+    // answers probes in [from, to) of the sorted order, each search gallops on from where the previous one stopped
+    private void merge(List<? extends E> probes, Probe<E>[] sorted, int from, int to, int[] result, boolean exact) {
+        int i = 0;
+        for (int j = from; j < to; j++) {
+            E key = sorted == null ? probes.get(j) : sorted[j].key();
+            i = gallop(i, key);
+            result[sorted == null ? j : sorted[j].index()] = i == size() || exact && compare(at(i), key) != 0 ? -1 : i;
+        }
+    }
+
+    private boolean sameOrder(ArraySet<?> other) {
+        return Objects.equals(comparator(), other.comparator());
+    }
+
+    private ArraySet<E> filter(ArraySet<E> other, boolean contained) {
+        Object[] result = new Object[size()];
+        int count = 0;
+        for (E e : this) {
+            if (other.contains(e) == contained) {
+                result[count++] = e;
+            }
+        }
+        return of(result, count);
+    }
+
+    // new set of the first count elements of array, which are sorted and distinct in the order of this set
+    private ArraySet<E> of(Object[] array, int count) {
+        return new ArraySet<E>(count == array.length ? array : Arrays.copyOf(array, count), comparator(), null, null,
+                0, count, false);
+    }
+
+    private E elementOrNull(int index) {
+        if (from <= index && index < to) {
+            return element(index);
         }
         return null;
     }
 
+    @SuppressWarnings("unchecked")
+    private int binarySearch(E element) {
+        if (model != null && element.getClass() == elements[0].getClass()) {
+            return inView(model.search(elements, element, ((Number) element).longValue()));
+        }
+        if (tree == null) {
+            return Arrays.binarySearch(elements, from, to, element, (Comparator<Object>) comparator);
+        }
+        int k = 1;
+        while (k < tree.length) {
+            k = 2 * k + (compareElements((E) tree[k], element) < 0 ? 1 : 0);
+        }
+        // the first element not less than the key lies between the nodes where the descent last turned
+        int right = Eytzinger.lastRight(k);
+        int l = right == 0 ? 0 : Eytzinger.rank(right, elements.length) + 1;
+        int r = Math.min(Eytzinger.rank(Eytzinger.lastLeft(k), elements.length) + 1, elements.length);
+        return inView(Arrays.binarySearch(elements, l, r, element, (Comparator<Object>) comparator));
+    }
+
+    // result of a search over all elements of the array, restricted to this view
+    private int inView(int index) {
+        int bound = index >= 0 ? index : -index - 1;
+        if (bound < from) {
+            return -from - 1;
+        }
+        if (bound >= to) {
+            return -to - 1;
+        }
+        return index;
+    }
+
+    // elements all of one integral type in natural order, so their values order them
+    private static boolean integral(Object[] elements, Comparator<?> comparator) {
+        if (comparator != null || elements.length == 0) {
+            return false;
+        }
+        Class<?> type = elements[0].getClass();
+        return (type == Long.class || type == Integer.class || type == Short.class || type == Byte.class)
+                && Arrays.stream(elements).allMatch(e -> e.getClass() == type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Object> order(Comparator<?> comparator) {
+        return comparator == null
+                ? (a, b) -> ((Comparable<Object>) a).compareTo(b)
+                : (Comparator<Object>) comparator;
+    }
+
+    private static Object[] sortedDistinct(Collection<?> collection, Comparator<?> comparator) {
+        Object[] array = collection.toArray();
+        if (collection instanceof SortedSet<?> set && Objects.equals(set.comparator(), comparator)) {
+            return array;
+        }
+        return sortedDistinct(array, order(comparator));
+    }
+
+    // sorts only if array is not sorted yet, of equal elements the first one is kept like in TreeSet
+    private static Object[] sortedDistinct(Object[] array, Comparator<Object> order) {
+        if (!isSorted(array, 0, array.length, order)) {
+            Arrays.sort(array, order);
+        } else if (array.length == 1) {
+            // TreeSet rejects a single null or incomparable element as well
+            order.compare(array[0], array[0]);
+        }
+        int size = 0;
+        for (Object e : array) {
+            if (size == 0 || order.compare(array[size - 1], e) != 0) {
+                array[size++] = e;
+            }
+        }
+        return size == array.length ? array : Arrays.copyOf(array, size);
+    }
+
+    // same as sortedDistinct, chunks of the array are checked and compacted in parallel, then copied to the result
+    private static Object[] parallelSortedDistinct(Object[] array, Comparator<Object> order, int parallelism) {
+        int chunks = Math.min(parallelism * 4, array.length / PARALLEL_CHUNK);
+        if (chunks <= 1) {
+            return sortedDistinct(array, order);
+        }
+        int[] bounds = new int[chunks + 1];
+        for (int c = 0; c <= chunks; c++) {
+            bounds[c] = (int) ((long) array.length * c / chunks);
+        }
+        // each chunk also checks the pair across its left bound
+        if (!IntStream.range(0, chunks).parallel()
+                .allMatch(c -> isSorted(array, Math.max(0, bounds[c] - 1), bounds[c + 1], order))) {
+            Arrays.parallelSort(array, order);
+        }
+        // decided before any chunk is compacted, since compaction overwrites the elements
+        boolean[] repeated = new boolean[chunks];
+        for (int c = 1; c < chunks; c++) {
+            repeated[c] = order.compare(array[bounds[c] - 1], array[bounds[c]]) == 0;
+        }
+        int[] sizes = new int[chunks];
+        IntStream.range(0, chunks).parallel()
+                .forEach(c -> sizes[c] = compact(array, bounds[c], bounds[c + 1], repeated[c], order));
+        int[] offsets = new int[chunks + 1];
+        for (int c = 0; c < chunks; c++) {
+            offsets[c + 1] = offsets[c] + sizes[c];
+        }
+        Object[] result = new Object[offsets[chunks]];
+        IntStream.range(0, chunks).parallel()
+                .forEach(c -> System.arraycopy(array, bounds[c], result, offsets[c], sizes[c]));
+        return result;
+    }
+
+    private static boolean isSorted(Object[] array, int from, int to, Comparator<Object> order) {
+        for (int i = from + 1; i < to; i++) {
+            if (order.compare(array[i - 1], array[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // moves distinct elements of array[from, to) to its beginning, array[i - 1] is never overwritten before it is read
+    private static int compact(Object[] array, int from, int to, boolean repeated, Comparator<Object> order) {
+        int size = from;
+        for (int i = from; i < to; i++) {
+            if (i == from ? !repeated : order.compare(array[i - 1], array[i]) != 0) {
+                array[size++] = array[i];
+            }
+        }
+        return size - from;
+    }
+
     private int realBinarySearch(E element, boolean bigger, boolean equals) {
-        int index = Collections.binarySearch(list, element, comparator);
+        int index = binarySearch(element);
         if (index >= 0) {
             if (equals) {
                 return index;
@@ -0,0 +1,75 @@
+package info.kgeorgiy.ja.denisov.arrayset;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.function.UnaryOperator;
+
+/**
+ * Shared reference to an immutable {@link ArraySet}, replaced as a whole. Readers take the current version
+ * with a single volatile read and may use it for as long as they need, it never changes under them,
+ * so reads take no locks and are never delayed by updates. Updates publish a new version by
+ * compare-and-set, so concurrent updaters need no lock either, an update that lost the race is retried
+ * on the version that won it.
+ */
+public class ArraySetReference<E extends Comparable<E>> {
+
+    private static final VarHandle SET;
+
+    static {
+        try {
+            SET = MethodHandles.lookup().findVarHandle(ArraySetReference.class, "set", ArraySet.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile ArraySet<E> set;
+
+    public ArraySetReference(ArraySet<E> set) {
+        this.set = set;
+    }
+
+    public ArraySet<E> get() {
+        return set;
+    }
+
+    public boolean contains(E e) {
+        return set.contains(e);
+    }
+
+    public void set(ArraySet<E> next) {
+        set = next;
+    }
+
+    public boolean compareAndSet(ArraySet<E> expected, ArraySet<E> next) {
+        return SET.compareAndSet(this, expected, next);
+    }
+
+    /**
+     * Publishes {@code update} of the current version, {@code update} may be called again if another
+     * version is published meanwhile, so it should have no side effects.
+     */
+    public ArraySet<E> update(UnaryOperator<ArraySet<E>> update) {
+        while (true) {
+            ArraySet<E> current = set;
+            ArraySet<E> next = update.apply(current);
+            if (compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Publishes the current version with {@code removed} elements taken out and then {@code added} ones put in,
+     * an added element replaces an equal one of the current version. Changes are sorted once,
+     * then every version they are applied to is merged with them in time linear in its size.
+     */
+    public ArraySet<E> apply(Collection<? extends E> added, Collection<? extends E> removed) {
+        Comparator<? super E> comparator = set.comparator();
+        ArraySet<E> addedSet = new ArraySet<>(added, comparator);
+        ArraySet<E> removedSet = new ArraySet<>(removed, comparator);
+        return update(current -> addedSet.union(current.difference(removedSet)));
+    }
+}
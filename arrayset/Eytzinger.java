@@ -0,0 +1,82 @@
+package info.kgeorgiy.ja.denisov.arrayset;
+
+/**
+ * Eytzinger (breadth-first) layout of a sorted array of {@code n} elements: node {@code k} has children {@code 2k}
+ * and {@code 2k + 1}, slot zero is unused. The first levels of every search share a few cache lines,
+ * the nodes a descent may reach four levels below are adjacent and can be loaded ahead,
+ * and the descent itself has no data-dependent branches.
+ */
+final class Eytzinger {
+    // the value loaded ahead, stored only so that the JIT cannot drop the loads
+    private static long sink;
+
+    private Eytzinger() {
+    }
+
+    /**
+     * Uses a value read only to load cache lines ahead. The store is practically never taken, so it costs
+     * a predicted branch and no writes shared between threads, while the loads it depends on must be done.
+     */
+    static void consume(long touched) {
+        if (touched == Long.MIN_VALUE + 1) {
+            sink = touched;
+        }
+    }
+
+    /**
+     * Only the first {@code nodes} nodes of the tree, that is its top levels.
+     */
+    static Object[] layout(Object[] sorted, int n, int nodes) {
+        Object[] tree = new Object[Math.min(n, nodes) + 1];
+        for (int k = 1; k < tree.length; k++) {
+            tree[k] = sorted[rank(k, n)];
+        }
+        return tree;
+    }
+
+    static int[] layout(int[] sorted, int n) {
+        int[] tree = new int[n + 1];
+        for (int k = 1; k <= n; k++) {
+            tree[k] = sorted[rank(k, n)];
+        }
+        return tree;
+    }
+
+    static long[] layout(long[] sorted, int n) {
+        long[] tree = new long[n + 1];
+        for (int k = 1; k <= n; k++) {
+            tree[k] = sorted[rank(k, n)];
+        }
+        return tree;
+    }
+
+    /**
+     * Node where a descent that stopped below the leaves at {@code k} turned left for the last time,
+     * that is the first element not less than the key, or zero if the descent never turned left.
+     */
+    static int lastLeft(int k) {
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    /**
+     * Node where a descent that stopped at {@code k} turned right for the last time, or zero if it never did.
+     */
+    static int lastRight(int k) {
+        return k >>> (Integer.numberOfTrailingZeros(k) + 1);
+    }
+
+    /**
+     * Position in the sorted array of the node {@code k}, or {@code n} for the node zero.
+     */
+    static int rank(int k, int n) {
+        if (k == 0) {
+            return n;
+        }
+        int height = 32 - Integer.numberOfLeadingZeros(n);
+        int depth = 31 - Integer.numberOfLeadingZeros(k);
+        // position in the perfect tree of the same height, minus the absent leaves to the left of the node
+        long perfect = ((2L * (k - (1 << depth)) + 1) << (height - 1 - depth)) - 1;
+        long leaves = n - (1L << (height - 1)) + 1;
+        return (int) (perfect - Math.max(0, (perfect + 1) / 2 - leaves));
+    }
+}
@@ -0,0 +1,252 @@
+package info.kgeorgiy.ja.denisov.arrayset;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable navigable set of {@code int} values backed by a sorted array, no element is ever boxed
+ * by the primitive methods. Navigation methods with {@code Index} suffix return position of the
+ * found element in this set or {@code -1} if there is no such element, see {@link #getInt(int)}.
+ * Sub-sets and the descending set are views sharing the array of this set,
+ * positions are counted in the iteration order of a view.
+ * With {@link ArraySet.Layout#EYTZINGER} layout searches go through a breadth-first copy of the array,
+ * loading the nodes four levels ahead of the descent.
+ * With {@link ArraySet.Layout#LEARNED} layout positions are predicted by a {@link LearnedIndex}.
+ */
+public class IntArraySet extends PrimitiveArraySet<Integer, IntArraySet> {
+
+    private final int[] elements;
+
+    private final int[] tree;
+
+    private final LearnedIndex model;
+
+    public IntArraySet(int... elements) {
+        this(elements, ArraySet.Layout.SORTED);
+    }
+
+    public IntArraySet(int[] elements, ArraySet.Layout layout) {
+        this(layout, distinct(elements));
+    }
+
+    public IntArraySet(Collection<Integer> collection) {
+        this(collection, ArraySet.Layout.SORTED);
+    }
+
+    public IntArraySet(Collection<Integer> collection, ArraySet.Layout layout) {
+        this(collection.stream().mapToInt(Integer::intValue).toArray(), layout);
+    }
+
+    private IntArraySet(ArraySet.Layout layout, int[] sorted) {
+        this(sorted,
+                layout == ArraySet.Layout.EYTZINGER ? Eytzinger.layout(sorted, sorted.length) : null,
+                layout == ArraySet.Layout.LEARNED ? LearnedIndex.of(sorted, sorted.length) : null,
+                0, sorted.length, false);
+    }
+
+    private IntArraySet(int[] elements, int[] tree, LearnedIndex model, int from, int to, boolean reversed) {
+        super(from, to, reversed);
+        this.elements = elements;
+        this.tree = tree;
+        this.model = model;
+    }
+
+    public boolean contains(int e) {
+        return binarySearch(e) >= 0;
+    }
+
+    public int getInt(int index) {
+        Objects.checkIndex(index, size());
+        return elements[index(index)];
+    }
+
+    public int firstInt() {
+        if (size() == 0) {
+            throw new NoSuchElementException("IntArraySet is empty");
+        }
+        return elements[index(0)];
+    }
+
+    public int lastInt() {
+        if (size() == 0) {
+            throw new NoSuchElementException("IntArraySet is empty");
+        }
+        return elements[index(size() - 1)];
+    }
+
+    public int lowerIndex(int e) {
+        return lowerPosition(binarySearch(e));
+    }
+
+    public int floorIndex(int e) {
+        return floorPosition(binarySearch(e));
+    }
+
+    public int ceilingIndex(int e) {
+        return ceilingPosition(binarySearch(e));
+    }
+
+    public int higherIndex(int e) {
+        return higherPosition(binarySearch(e));
+    }
+
+    public IntArraySet subSet(int fromElement, boolean fromInclusive, int toElement, boolean toInclusive) {
+        return subView(Integer.compare(fromElement, toElement),
+                binarySearch(fromElement), fromInclusive, binarySearch(toElement), toInclusive);
+    }
+
+    public IntArraySet headSet(int toElement, boolean inclusive) {
+        return headView(binarySearch(toElement), inclusive);
+    }
+
+    public IntArraySet tailSet(int fromElement, boolean inclusive) {
+        return tailView(binarySearch(fromElement), inclusive);
+    }
+
+    public int[] toIntArray() {
+        return intStream().toArray();
+    }
+
+    public IntStream intStream() {
+        return reversed ? IntStream.range(0, size()).map(i -> elements[index(i)]) : Arrays.stream(elements, from, to);
+    }
+
+    @Override
+    public Integer lower(Integer e) {
+        return box(lowerIndex(e));
+    }
+
+    @Override
+    public Integer floor(Integer e) {
+        return box(floorIndex(e));
+    }
+
+    @Override
+    public Integer ceiling(Integer e) {
+        return box(ceilingIndex(e));
+    }
+
+    @Override
+    public Integer higher(Integer e) {
+        return box(higherIndex(e));
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return iterator(reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return iterator(!reversed);
+    }
+
+    @Override
+    public Spliterator.OfInt spliterator() {
+        if (reversed) {
+            return intStream().spliterator();
+        }
+        return Spliterators.spliterator(elements, from, to,
+                Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED | Spliterator.IMMUTABLE);
+    }
+
+    @Override
+    public IntArraySet subSet(Integer fromElement, boolean fromInclusive, Integer toElement, boolean toInclusive) {
+        return subSet(fromElement.intValue(), fromInclusive, toElement.intValue(), toInclusive);
+    }
+
+    @Override
+    public IntArraySet headSet(Integer toElement, boolean inclusive) {
+        return headSet(toElement.intValue(), inclusive);
+    }
+
+    @Override
+    public IntArraySet tailSet(Integer fromElement, boolean inclusive) {
+        return tailSet(fromElement.intValue(), inclusive);
+    }
+
+    @Override
+    public Integer first() {
+        return firstInt();
+    }
+
+    @Override
+    public Integer last() {
+        return lastInt();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer e && contains(e.intValue());
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += elements[i];
+        }
+        return hash;
+    }
+
+    @Override
+    IntArraySet view(int from, int to, boolean reversed) {
+        return new IntArraySet(elements, tree, model, from, to, reversed);
+    }
+
+    private Integer box(int position) {
+        return position < 0 ? null : elements[index(position)];
+    }
+
+    private PrimitiveIterator.OfInt iterator(boolean descending) {
+        PrimitiveIterator.OfInt indices = indices(descending);
+        return new PrimitiveIterator.OfInt() {
+            @Override
+            public boolean hasNext() {
+                return indices.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                return elements[indices.nextInt()];
+            }
+        };
+    }
+
+    private int binarySearch(int element) {
+        if (model != null) {
+            return inView(model.search(elements, element));
+        }
+        if (tree == null) {
+            return Arrays.binarySearch(elements, from, to, element);
+        }
+        int n = tree.length - 1;
+        int ahead = (n - 15) >> 4;
+        int touched = 0;
+        int k = 1;
+        while (k <= n) {
+            if (k <= ahead) {
+                // every cache line of the 16 nodes four levels below starts loading before the descent gets there
+                int block = k << 4;
+                touched ^= tree[block] ^ tree[block + 15];
+            }
+            k = 2 * k + (tree[k] < element ? 1 : 0);
+        }
+        Eytzinger.consume(touched);
+        k = Eytzinger.lastLeft(k);
+        int index = Eytzinger.rank(k, n);
+        return inView(tree[k] == element ? index : -index - 1);
+    }
+
+    private static int[] distinct(int[] elements) {
+        int[] sorted = elements.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+}
@@ -0,0 +1,123 @@
+package info.kgeorgiy.ja.denisov.arrayset;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Piecewise linear model of positions of sorted distinct integral keys. A linear root model over the whole
+ * key range picks a segment, a line through the first and the last key of the segment predicts the position,
+ * and the largest error of the prediction over the keys of the segment bounds the window searched in binary.
+ * A segment takes 32 bytes for 32 keys on average, so for smoothly distributed keys a search reads
+ * one cache line of the model and one or two of the keys.
+ */
+final class LearnedIndex {
+    private static final int SEGMENT_KEYS = 32;
+
+    // first key, slope, first position and error of every segment, then the end position
+    private static final int STRIDE = 4;
+
+    private final double min;
+
+    private final double scale;
+
+    private final int last;
+
+    private final double[] segments;
+
+    LearnedIndex(IntToLongFunction key, int n) {
+        int count = Math.max(1, n / SEGMENT_KEYS);
+        this.min = n == 0 ? 0 : key.applyAsLong(0);
+        double range = n == 0 ? 0 : key.applyAsLong(n - 1) - min;
+        this.scale = range > 0 ? count / range : 0;
+        this.last = count - 1;
+        this.segments = new double[STRIDE * count + STRIDE];
+        int i = 0;
+        for (int s = 0; s < count; s++) {
+            int start = i;
+            while (i < n && segment(key.applyAsLong(i)) <= s) {
+                i++;
+            }
+            double first = start < i ? key.applyAsLong(start) : 0;
+            double width = start < i ? key.applyAsLong(i - 1) - first : 0;
+            segments[STRIDE * s] = first;
+            segments[STRIDE * s + 1] = width > 0 ? (i - 1 - start) / width : 0;
+            segments[STRIDE * s + 2] = start;
+        }
+        segments[STRIDE * count + 2] = n;
+        for (int s = 0; s < count; s++) {
+            int error = 0;
+            for (int j = start(s); j < start(s + 1); j++) {
+                error = Math.max(error, Math.abs(predict(s, key.applyAsLong(j)) - j));
+            }
+            segments[STRIDE * s + 3] = error;
+        }
+    }
+
+    static LearnedIndex of(int[] sorted, int n) {
+        return new LearnedIndex(i -> sorted[i], n);
+    }
+
+    static LearnedIndex of(long[] sorted, int n) {
+        return new LearnedIndex(i -> sorted[i], n);
+    }
+
+    /**
+     * Same as {@link Arrays#binarySearch(int[], int)} over the keys the model was built for.
+     */
+    int search(int[] keys, int key) {
+        return search(key, (from, to) -> Arrays.binarySearch(keys, from, to, key));
+    }
+
+    int search(long[] keys, long key) {
+        return search(key, (from, to) -> Arrays.binarySearch(keys, from, to, key));
+    }
+
+    /**
+     * Search in boxed keys of natural order, {@code value} is the integral value of {@code key}.
+     */
+    int search(Object[] keys, Object key, long value) {
+        return search(value, (from, to) -> Arrays.binarySearch(keys, from, to, key));
+    }
+
+    // binary search of the key in a range of the keys
+    private interface RangeSearch {
+        int search(int from, int to);
+    }
+
+    private int search(long key, RangeSearch range) {
+        int s = segment(key);
+        int start = start(s);
+        int end = start(s + 1);
+        int predicted = predict(s, key);
+        int l = Math.max(start, predicted - error(s));
+        int r = Math.min(end, predicted + error(s) + 1);
+        int index = range.search(l, r);
+        // keys absent from the set are not bound by the error of the segment, but by the segment itself
+        if (index == -l - 1 && l > start) {
+            index = range.search(start, l);
+        }
+        if (index == -r - 1 && r < end) {
+            index = range.search(r, end);
+        }
+        return index;
+    }
+
+    // monotone in key, so a segment holds a contiguous run of keys and every key between them
+    private int segment(long key) {
+        double scaled = (key - min) * scale;
+        return (int) Math.min(Math.max(scaled, 0), last);
+    }
+
+    private int start(int s) {
+        return (int) segments[STRIDE * s + 2];
+    }
+
+    private int error(int s) {
+        return (int) segments[STRIDE * s + 3];
+    }
+
+    private int predict(int s, long key) {
+        double offset = (key - segments[STRIDE * s]) * segments[STRIDE * s + 1];
+        return start(s) + (int) Math.min(Math.max(offset, 0), start(s + 1) - start(s));
+    }
+}
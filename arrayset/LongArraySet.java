@@ -0,0 +1,253 @@
+package info.kgeorgiy.ja.denisov.arrayset;
+
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Immutable navigable set of {@code long} values backed by a sorted array, no element is ever boxed
+ * by the primitive methods. Navigation methods with {@code Index} suffix return position of the
+ * found element in this set or {@code -1} if there is no such element, see {@link #getLong(int)}.
+ * Sub-sets and the descending set are views sharing the array of this set,
+ * positions are counted in the iteration order of a view.
+ * With {@link ArraySet.Layout#EYTZINGER} layout searches go through a breadth-first copy of the array,
+ * loading the nodes four levels ahead of the descent.
+ * With {@link ArraySet.Layout#LEARNED} layout positions are predicted by a {@link LearnedIndex}.
+ */
+public class LongArraySet extends PrimitiveArraySet<Long, LongArraySet> {
+
+    private final long[] elements;
+
+    private final long[] tree;
+
+    private final LearnedIndex model;
+
+    public LongArraySet(long... elements) {
+        this(elements, ArraySet.Layout.SORTED);
+    }
+
+    public LongArraySet(long[] elements, ArraySet.Layout layout) {
+        this(layout, distinct(elements));
+    }
+
+    public LongArraySet(Collection<Long> collection) {
+        this(collection, ArraySet.Layout.SORTED);
+    }
+
+    public LongArraySet(Collection<Long> collection, ArraySet.Layout layout) {
+        this(collection.stream().mapToLong(Long::longValue).toArray(), layout);
+    }
+
+    private LongArraySet(ArraySet.Layout layout, long[] sorted) {
+        this(sorted,
+                layout == ArraySet.Layout.EYTZINGER ? Eytzinger.layout(sorted, sorted.length) : null,
+                layout == ArraySet.Layout.LEARNED ? LearnedIndex.of(sorted, sorted.length) : null,
+                0, sorted.length, false);
+    }
+
+    private LongArraySet(long[] elements, long[] tree, LearnedIndex model, int from, int to, boolean reversed) {
+        super(from, to, reversed);
+        this.elements = elements;
+        this.tree = tree;
+        this.model = model;
+    }
+
+    public boolean contains(long e) {
+        return binarySearch(e) >= 0;
+    }
+
+    public long getLong(int index) {
+        Objects.checkIndex(index, size());
+        return elements[index(index)];
+    }
+
+    public long firstLong() {
+        if (size() == 0) {
+            throw new NoSuchElementException("LongArraySet is empty");
+        }
+        return elements[index(0)];
+    }
+
+    public long lastLong() {
+        if (size() == 0) {
+            throw new NoSuchElementException("LongArraySet is empty");
+        }
+        return elements[index(size() - 1)];
+    }
+
+    public int lowerIndex(long e) {
+        return lowerPosition(binarySearch(e));
+    }
+
+    public int floorIndex(long e) {
+        return floorPosition(binarySearch(e));
+    }
+
+    public int ceilingIndex(long e) {
+        return ceilingPosition(binarySearch(e));
+    }
+
+    public int higherIndex(long e) {
+        return higherPosition(binarySearch(e));
+    }
+
+    public LongArraySet subSet(long fromElement, boolean fromInclusive, long toElement, boolean toInclusive) {
+        return subView(Long.compare(fromElement, toElement),
+                binarySearch(fromElement), fromInclusive, binarySearch(toElement), toInclusive);
+    }
+
+    public LongArraySet headSet(long toElement, boolean inclusive) {
+        return headView(binarySearch(toElement), inclusive);
+    }
+
+    public LongArraySet tailSet(long fromElement, boolean inclusive) {
+        return tailView(binarySearch(fromElement), inclusive);
+    }
+
+    public long[] toLongArray() {
+        return longStream().toArray();
+    }
+
+    public LongStream longStream() {
+        return reversed ? IntStream.range(0, size()).mapToLong(i -> elements[index(i)]) : Arrays.stream(elements, from, to);
+    }
+
+    @Override
+    public Long lower(Long e) {
+        return box(lowerIndex(e));
+    }
+
+    @Override
+    public Long floor(Long e) {
+        return box(floorIndex(e));
+    }
+
+    @Override
+    public Long ceiling(Long e) {
+        return box(ceilingIndex(e));
+    }
+
+    @Override
+    public Long higher(Long e) {
+        return box(higherIndex(e));
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return iterator(reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return iterator(!reversed);
+    }
+
+    @Override
+    public Spliterator.OfLong spliterator() {
+        if (reversed) {
+            return longStream().spliterator();
+        }
+        return Spliterators.spliterator(elements, from, to,
+                Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED | Spliterator.IMMUTABLE);
+    }
+
+    @Override
+    public LongArraySet subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+        return subSet(fromElement.longValue(), fromInclusive, toElement.longValue(), toInclusive);
+    }
+
+    @Override
+    public LongArraySet headSet(Long toElement, boolean inclusive) {
+        return headSet(toElement.longValue(), inclusive);
+    }
+
+    @Override
+    public LongArraySet tailSet(Long fromElement, boolean inclusive) {
+        return tailSet(fromElement.longValue(), inclusive);
+    }
+
+    @Override
+    public Long first() {
+        return firstLong();
+    }
+
+    @Override
+    public Long last() {
+        return lastLong();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long e && contains(e.longValue());
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += Long.hashCode(elements[i]);
+        }
+        return hash;
+    }
+
+    @Override
+    LongArraySet view(int from, int to, boolean reversed) {
+        return new LongArraySet(elements, tree, model, from, to, reversed);
+    }
+
+    private Long box(int position) {
+        return position < 0 ? null : elements[index(position)];
+    }
+
+    private PrimitiveIterator.OfLong iterator(boolean descending) {
+        PrimitiveIterator.OfInt indices = indices(descending);
+        return new PrimitiveIterator.OfLong() {
+            @Override
+            public boolean hasNext() {
+                return indices.hasNext();
+            }
+
+            @Override
+            public long nextLong() {
+                return elements[indices.nextInt()];
+            }
+        };
+    }
+
+    private int binarySearch(long element) {
+        if (model != null) {
+            return inView(model.search(elements, element));
+        }
+        if (tree == null) {
+            return Arrays.binarySearch(elements, from, to, element);
+        }
+        int n = tree.length - 1;
+        int ahead = (n - 15) >> 4;
+        long touched = 0;
+        int k = 1;
+        while (k <= n) {
+            if (k <= ahead) {
+                // every cache line of the 16 nodes four levels below starts loading before the descent gets there
+                int block = k << 4;
+                touched ^= tree[block] ^ tree[block + 8] ^ tree[block + 15];
+            }
+            k = 2 * k + (tree[k] < element ? 1 : 0);
+        }
+        Eytzinger.consume(touched);
+        k = Eytzinger.lastLeft(k);
+        int index = Eytzinger.rank(k, n);
+        return inView(tree[k] == element ? index : -index - 1);
+    }
+
+    private static long[] distinct(long[] elements) {
+        long[] sorted = elements.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+}
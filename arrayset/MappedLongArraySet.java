@@ -0,0 +1,293 @@
+package info.kgeorgiy.ja.denisov.arrayset;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Immutable navigable set of {@code long} keys stored in a file and mapped read-only, so opening it takes
+ * constant time, keys stay off the heap and the page cache is shared by every process mapping the same file.
+ * The file is written once by {@link #write(Path, LongArraySet)}: a header of magic, version and count,
+ * then sorted distinct keys, all little-endian. Views and primitive methods follow {@link LongArraySet},
+ * views share the mapping, which is released when the last of them becomes unreachable.
+ */
+public class MappedLongArraySet extends PrimitiveArraySet<Long, MappedLongArraySet> {
+
+    private static final int MAGIC = 0x4b455953;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+
+    // keys per mapped region, a region is 1 GiB
+    private static final int REGION_SHIFT = 27;
+
+    private final ByteBuffer[] regions;
+
+    private MappedLongArraySet(ByteBuffer[] regions, int from, int to, boolean reversed) {
+        super(from, to, reversed);
+        this.regions = regions;
+    }
+
+    public static MappedLongArraySet open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("truncated key set header in " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(file + " is not a key set");
+            }
+            long count = header.getLong();
+            if (count < 0 || count > Integer.MAX_VALUE || channel.size() != HEADER_SIZE + count * Long.BYTES) {
+                throw new IOException("key set " + file + " has invalid size");
+            }
+            ByteBuffer[] regions = new ByteBuffer[(int) ((count + (1L << REGION_SHIFT) - 1) >>> REGION_SHIFT)];
+            for (int i = 0; i < regions.length; i++) {
+                long position = HEADER_SIZE + ((long) i << REGION_SHIFT) * Long.BYTES;
+                long length = Math.min(1L << REGION_SHIFT, count - ((long) i << REGION_SHIFT)) * Long.BYTES;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedLongArraySet(regions, 0, (int) count, false);
+        }
+    }
+
+    /**
+     * Replaces {@code file} atomically, so processes that have mapped the previous version keep reading it.
+     */
+    public static void write(Path file, LongArraySet keys) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putLong(keys.size());
+                // keys are stored ascending, even from a descending view
+                PrimitiveIterator.OfLong it = keys.comparator() == null ? keys.iterator() : keys.descendingIterator();
+                while (it.hasNext()) {
+                    if (!buffer.hasRemaining()) {
+                        writeFully(channel, buffer);
+                    }
+                    buffer.putLong(it.nextLong());
+                }
+                writeFully(channel, buffer);
+                channel.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Builds key set file from a text file of decimal keys, one per line.
+     */
+    public static void main(String[] args) {
+        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
+            System.err.println("usage: MappedLongArraySet <keys.txt> <keys.bin>");
+            return;
+        }
+        try (Stream<String> lines = Files.lines(Path.of(args[0]))) {
+            long[] keys = lines.map(String::trim).filter(line -> !line.isEmpty()).mapToLong(Long::parseLong).toArray();
+            write(Path.of(args[1]), new LongArraySet(keys));
+        } catch (InvalidPathException e) {
+            System.err.println("MappedLongArraySetError: invalid path " + e.getInput());
+        } catch (NumberFormatException e) {
+            System.err.println("MappedLongArraySetError: invalid key, " + e.getMessage());
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("MappedLongArraySetError: " + e.getMessage());
+        }
+    }
+
+    public boolean contains(long e) {
+        return binarySearch(e) >= 0;
+    }
+
+    public long getLong(int index) {
+        Objects.checkIndex(index, size());
+        return key(index(index));
+    }
+
+    public long firstLong() {
+        if (size() == 0) {
+            throw new NoSuchElementException("MappedLongArraySet is empty");
+        }
+        return key(index(0));
+    }
+
+    public long lastLong() {
+        if (size() == 0) {
+            throw new NoSuchElementException("MappedLongArraySet is empty");
+        }
+        return key(index(size() - 1));
+    }
+
+    public int lowerIndex(long e) {
+        return lowerPosition(binarySearch(e));
+    }
+
+    public int floorIndex(long e) {
+        return floorPosition(binarySearch(e));
+    }
+
+    public int ceilingIndex(long e) {
+        return ceilingPosition(binarySearch(e));
+    }
+
+    public int higherIndex(long e) {
+        return higherPosition(binarySearch(e));
+    }
+
+    public MappedLongArraySet subSet(long fromElement, boolean fromInclusive, long toElement, boolean toInclusive) {
+        return subView(Long.compare(fromElement, toElement),
+                binarySearch(fromElement), fromInclusive, binarySearch(toElement), toInclusive);
+    }
+
+    public MappedLongArraySet headSet(long toElement, boolean inclusive) {
+        return headView(binarySearch(toElement), inclusive);
+    }
+
+    public MappedLongArraySet tailSet(long fromElement, boolean inclusive) {
+        return tailView(binarySearch(fromElement), inclusive);
+    }
+
+    public long[] toLongArray() {
+        return longStream().toArray();
+    }
+
+    public LongStream longStream() {
+        return IntStream.range(0, size()).mapToLong(i -> key(index(i)));
+    }
+
+    @Override
+    public Long lower(Long e) {
+        return box(lowerIndex(e));
+    }
+
+    @Override
+    public Long floor(Long e) {
+        return box(floorIndex(e));
+    }
+
+    @Override
+    public Long ceiling(Long e) {
+        return box(ceilingIndex(e));
+    }
+
+    @Override
+    public Long higher(Long e) {
+        return box(higherIndex(e));
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return iterator(reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return iterator(!reversed);
+    }
+
+    @Override
+    public MappedLongArraySet subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+        return subSet(fromElement.longValue(), fromInclusive, toElement.longValue(), toInclusive);
+    }
+
+    @Override
+    public MappedLongArraySet headSet(Long toElement, boolean inclusive) {
+        return headSet(toElement.longValue(), inclusive);
+    }
+
+    @Override
+    public MappedLongArraySet tailSet(Long fromElement, boolean inclusive) {
+        return tailSet(fromElement.longValue(), inclusive);
+    }
+
+    @Override
+    public Long first() {
+        return firstLong();
+    }
+
+    @Override
+    public Long last() {
+        return lastLong();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long e && contains(e.longValue());
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += Long.hashCode(key(i));
+        }
+        return hash;
+    }
+
+    @Override
+    MappedLongArraySet view(int from, int to, boolean reversed) {
+        return new MappedLongArraySet(regions, from, to, reversed);
+    }
+
+    private long key(int index) {
+        return regions[index >>> REGION_SHIFT].getLong((index & ((1 << REGION_SHIFT) - 1)) * Long.BYTES);
+    }
+
+    private Long box(int position) {
+        return position < 0 ? null : key(index(position));
+    }
+
+    private PrimitiveIterator.OfLong iterator(boolean descending) {
+        PrimitiveIterator.OfInt indices = indices(descending);
+        return new PrimitiveIterator.OfLong() {
+            @Override
+            public boolean hasNext() {
+                return indices.hasNext();
+            }
+
+            @Override
+            public long nextLong() {
+                return key(indices.nextInt());
+            }
+        };
+    }
+
+    private int binarySearch(long element) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long key = key(middle);
+            if (key < element) {
+                low = middle + 1;
+            } else if (key > element) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+}
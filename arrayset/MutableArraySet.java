@@ -0,0 +1,213 @@
+package info.kgeorgiy.ja.denisov.arrayset;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Mutable companion of {@link ArraySet}, organized like a log-structured merge tree. Inserts and removals go
+ * to a concurrent sorted buffer. A full buffer is turned into a level of two immutable {@link ArraySet}s,
+ * of added and of removed elements, and merged with older levels in the background while newer levels
+ * are at least half as large as the next older one. So there are logarithmically many levels
+ * and an update is merged amortized {@code O(log n)} times. Reads never take a lock: they search the buffers
+ * and then levels from newest to oldest in the published state. Updates are serialized by the lock of this set,
+ * a merge rejected by the executor runs in the updating thread. A merge that fails puts its updates back
+ * under the newer ones of the buffer, and the next update throws {@link IllegalStateException} caused by the failure.
+ */
+public class MutableArraySet<E extends Comparable<E>> {
+
+    private static final int BUFFER_SIZE = 1 << 12;
+
+    private final Comparator<? super E> comparator;
+
+    private final int bufferSize;
+
+    private final Executor executor;
+
+    private volatile State<E> state;
+
+    // updates made so far
+    private volatile long version;
+
+    private volatile Snapshot<E> snapshot = new Snapshot<>(-1, null);
+
+    // updates in the buffer of the current state
+    private int buffered;
+
+    // failure of the last merge, not yet reported
+    private Throwable failure;
+
+    // buffers are searched before levels, levels are ordered from newest to oldest, flushing is null between merges
+    private record State<E extends Comparable<E>>(ConcurrentSkipListMap<E, Boolean> buffer, ConcurrentSkipListMap<E, Boolean> flushing,
+                            List<Level<E>> levels) {
+    }
+
+    // includes at least the first version updates
+    private record Snapshot<E extends Comparable<E>>(long version, ArraySet<E> elements) {
+    }
+
+    // added and removed elements, disjoint
+    private record Level<E extends Comparable<E>>(ArraySet<E> added, ArraySet<E> removed) {
+        int size() {
+            return added.size() + removed.size();
+        }
+    }
+
+    public MutableArraySet() {
+        this(null);
+    }
+
+    public MutableArraySet(Comparator<? super E> comparator) {
+        this(List.of(), comparator, BUFFER_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Set of elements of {@code collection}, buffering up to {@code bufferSize} updates
+     * and merging levels on {@code executor}.
+     */
+    public MutableArraySet(Collection<? extends E> collection, Comparator<? super E> comparator,
+                           int bufferSize, Executor executor) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive: " + bufferSize);
+        }
+        this.comparator = comparator;
+        this.bufferSize = bufferSize;
+        this.executor = executor;
+        ArraySet<E> initial = new ArraySet<>(collection, comparator);
+        this.state = new State<>(new ConcurrentSkipListMap<>(comparator), null,
+                initial.isEmpty() ? List.of() : List.of(new Level<>(initial, new ArraySet<E>(comparator))));
+    }
+
+    public synchronized void add(E e) {
+        update(e, true);
+    }
+
+    public synchronized void remove(E e) {
+        update(e, false);
+    }
+
+    public boolean contains(E e) {
+        State<E> current = state;
+        Boolean added = current.buffer().get(e);
+        if (added == null && current.flushing() != null) {
+            added = current.flushing().get(e);
+        }
+        if (added != null) {
+            return added;
+        }
+        for (Level<E> level : current.levels()) {
+            if (level.added().contains(e)) {
+                return true;
+            }
+            if (level.removed().contains(e)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Immutable set of the elements, including every update completed before the call.
+     * It is built by merging all levels and buffers and reused until the next update.
+     */
+    public ArraySet<E> snapshot() {
+        long updates = version;
+        Snapshot<E> published = snapshot;
+        if (published.version() == updates) {
+            return published.elements();
+        }
+        State<E> current = state;
+        List<Level<E>> levels = current.levels();
+        ArraySet<E> elements = new ArraySet<E>(comparator);
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            elements = apply(elements, levels.get(i));
+        }
+        if (current.flushing() != null) {
+            elements = apply(elements, level(current.flushing()));
+        }
+        elements = apply(elements, level(current.buffer()));
+        synchronized (this) {
+            if (snapshot.version() < updates) {
+                snapshot = new Snapshot<>(updates, elements);
+            }
+        }
+        return elements;
+    }
+
+    private void update(E e, boolean added) {
+        if (failure != null) {
+            Throwable cause = failure;
+            failure = null;
+            throw new IllegalStateException("merge of levels failed", cause);
+        }
+        state.buffer().put(e, added);
+        version++;
+        buffered++;
+        flushIfFull();
+    }
+
+    private void flushIfFull() {
+        State<E> current = state;
+        if (buffered >= bufferSize && current.flushing() == null) {
+            state = new State<>(new ConcurrentSkipListMap<>(comparator), current.buffer(), current.levels());
+            buffered = 0;
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+    }
+
+    // only one flush runs at a time, and nothing else changes flushing or levels meanwhile
+    private void flush() {
+        State<E> current = state;
+        List<Level<E>> levels = new ArrayList<>(current.levels());
+        try {
+            levels.add(0, level(current.flushing()));
+            while (levels.size() > 1 && levels.get(0).size() * 2 >= levels.get(1).size()) {
+                Level<E> newer = levels.remove(0);
+                levels.set(0, merge(newer, levels.get(0), levels.size() == 1));
+            }
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                failure = e;
+                State<E> latest = state;
+                try {
+                    // readers find the same updates in the buffer as in flushing, so the state can be replaced
+                    latest.flushing().forEach(latest.buffer()::putIfAbsent);
+                } finally {
+                    buffered = latest.buffer().size();
+                    state = new State<>(latest.buffer(), null, latest.levels());
+                }
+            }
+            return;
+        }
+        synchronized (this) {
+            state = new State<>(state.buffer(), null, List.copyOf(levels));
+            flushIfFull();
+        }
+    }
+
+    private Level<E> level(NavigableMap<E, Boolean> buffer) {
+        List<E> added = new ArrayList<>();
+        List<E> removed = new ArrayList<>();
+        buffer.forEach((e, isAdded) -> (isAdded ? added : removed).add(e));
+        return new Level<>(new ArraySet<>(added, comparator), new ArraySet<>(removed, comparator));
+    }
+
+    // older level updated by newer one, removals are dropped once nothing older is left to remove from
+    private Level<E> merge(Level<E> newer, Level<E> older, boolean oldest) {
+        ArraySet<E> added = newer.added().union(older.added().difference(newer.removed()));
+        ArraySet<E> removed = oldest
+                ? new ArraySet<E>(comparator)
+                : newer.removed().union(older.removed().difference(newer.added()));
+        return new Level<>(added, removed);
+    }
+
+    private static <E extends Comparable<E>> ArraySet<E> apply(ArraySet<E> elements, Level<E> level) {
+        return level.added().union(elements.difference(level.removed()));
+    }
+}
@@ -0,0 +1,187 @@
+package info.kgeorgiy.ja.denisov.arrayset;
+
+import java.util.*;
+
+/**
+ * Index logic shared by the views of {@link IntArraySet}, {@link LongArraySet} and {@link MappedLongArraySet}:
+ * a view is a range {@code [from, to)} of sorted distinct elements, iterated backwards if it is reversed.
+ * Positions are counted in the iteration order of a view, indices are absolute among the elements.
+ * Searches are done by the subclass and passed here in the {@link Arrays#binarySearch(int[], int)} convention.
+ */
+abstract class PrimitiveArraySet<E, S extends PrimitiveArraySet<E, S>> extends AbstractSet<E> implements NavigableSet<E> {
+
+    final int from;
+
+    final int to;
+
+    final boolean reversed;
+
+    PrimitiveArraySet(int from, int to, boolean reversed) {
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+    }
+
+    abstract S view(int from, int to, boolean reversed);
+
+    @Override
+    public abstract S subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive);
+
+    @Override
+    public abstract S headSet(E toElement, boolean inclusive);
+
+    @Override
+    public abstract S tailSet(E fromElement, boolean inclusive);
+
+    @Override
+    public E pollFirst() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public E pollLast() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is immutable");
+    }
+
+    @Override
+    public S descendingSet() {
+        return view(from, to, !reversed);
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return reversed ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public S subSet(E fromElement, E toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public S headSet(E toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public S tailSet(E fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    // index of the element at position i in the iteration order of this view
+    int index(int i) {
+        return reversed ? to - 1 - i : from + i;
+    }
+
+    // position in the iteration order of the element at index, or -1 if it is out of this view
+    int position(int index) {
+        if (index < from || index >= to) {
+            return -1;
+        }
+        return reversed ? to - 1 - index : index - from;
+    }
+
+    // result of a search over all elements of the array, restricted to this view
+    int inView(int search) {
+        int bound = search >= 0 ? search : -search - 1;
+        if (bound < from) {
+            return -from - 1;
+        }
+        if (bound >= to) {
+            return -to - 1;
+        }
+        return search;
+    }
+
+    int lowerPosition(int search) {
+        return position(nearest(search, reversed, false));
+    }
+
+    int floorPosition(int search) {
+        return position(nearest(search, reversed, true));
+    }
+
+    int ceilingPosition(int search) {
+        return position(nearest(search, !reversed, true));
+    }
+
+    int higherPosition(int search) {
+        return position(nearest(search, !reversed, false));
+    }
+
+    // comparison is the sign of fromElement compared to toElement in the natural order
+    S subView(int comparison, int fromSearch, boolean fromInclusive, int toSearch, boolean toInclusive) {
+        if (reversed ? comparison < 0 : comparison > 0) {
+            throw new IllegalArgumentException("fromElement is bigger than toElement");
+        }
+        return reversed
+                ? view(lowBound(toSearch, toInclusive), highBound(fromSearch, fromInclusive))
+                : view(lowBound(fromSearch, fromInclusive), highBound(toSearch, toInclusive));
+    }
+
+    S headView(int toSearch, boolean inclusive) {
+        return reversed ? view(lowBound(toSearch, inclusive), to) : view(from, highBound(toSearch, inclusive));
+    }
+
+    S tailView(int fromSearch, boolean inclusive) {
+        return reversed ? view(from, highBound(fromSearch, inclusive)) : view(lowBound(fromSearch, inclusive), to);
+    }
+
+    // absolute indices of the elements in the given order
+    PrimitiveIterator.OfInt indices(boolean descending) {
+        return new PrimitiveIterator.OfInt() {
+            private int index = descending ? to - 1 : from;
+
+            @Override
+            public boolean hasNext() {
+                return descending ? index >= from : index < to;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return descending ? index-- : index++;
+            }
+        };
+    }
+
+    // index of the nearest element bigger or smaller than the searched one, or equal to it
+    private static int nearest(int search, boolean bigger, boolean equals) {
+        int index = search;
+        if (index >= 0) {
+            if (!equals) {
+                index += bigger ? 1 : -1;
+            }
+        } else {
+            index = -index - 2;
+            if (bigger) {
+                index++;
+            }
+        }
+        return index;
+    }
+
+    private int lowBound(int search, boolean inclusive) {
+        return nearest(search, true, inclusive);
+    }
+
+    private int highBound(int search, boolean inclusive) {
+        return nearest(search, false, inclusive) + 1;
+    }
+
+    private S view(int l, int r) {
+        return view(l, Math.max(l, r), reversed);
+    }
+}
@@ -0,0 +1,79 @@
+package info.kgeorgiy.ja.denisov.arrayset.bench;
+
+import info.kgeorgiy.ja.denisov.arrayset.ArraySet;
+import info.kgeorgiy.ja.denisov.arrayset.LongArraySet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random point lookups, half of them hits, into sets from cache-resident to far larger than the last level cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx8g")
+public class ArraySetLookupBenchmark {
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000", "1000000", "16000000"})
+    public int size;
+
+    @Param({"SORTED", "EYTZINGER", "LEARNED"})
+    public ArraySet.Layout layout;
+
+    @Param({"boxed", "long"})
+    public String elements;
+
+    private ArraySet<Long> boxedSet;
+    private LongArraySet longSet;
+    private long[] probes;
+    private Long[] boxedProbes;
+    private int next;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] values = random.longs(size).toArray();
+        probes = new long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = random.nextBoolean() ? values[random.nextInt(size)] : random.nextLong();
+        }
+        if ("long".equals(elements)) {
+            longSet = new LongArraySet(values, layout);
+        } else {
+            boxedSet = new ArraySet<>(Arrays.stream(values).boxed().toList(), null, layout);
+            boxedProbes = Arrays.stream(probes).boxed().toArray(Long[]::new);
+        }
+    }
+
+    @Benchmark
+    public boolean contains() {
+        int probe = next++ & (PROBES - 1);
+        return longSet != null ? longSet.contains(probes[probe]) : boxedSet.contains(boxedProbes[probe]);
+    }
+
+    @Benchmark
+    public int ceiling() {
+        int probe = next++ & (PROBES - 1);
+        if (longSet != null) {
+            return longSet.ceilingIndex(probes[probe]);
+        }
+        Long ceiling = boxedSet.ceiling(boxedProbes[probe]);
+        return ceiling == null ? -1 : 0;
+    }
+}
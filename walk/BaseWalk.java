@@ -2,23 +2,32 @@ package info.kgeorgiy.ja.denisov.walk;
 
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
 
 public class BaseWalk {
     private final int depth;
     private final String walkerName;
+    private WalkOptions options;
 
     public BaseWalk(int depth) {
         this(depth, "BaseWalk");
     }
 
     public BaseWalk(int depth, String walkerName) {
+        this(depth, walkerName, new WalkOptions());
+    }
+
+    public BaseWalk(int depth, String walkerName, WalkOptions options) {
         this.depth = depth;
         this.walkerName = walkerName;
+        this.options = options;
     }
 
     public String error(String message) {
@@ -29,6 +38,18 @@ public class BaseWalk {
         if (args == null) {
             throw new WalkException(error("args is null"));
         }
+        int optionsCount = 0;
+        while (optionsCount < args.length && args[optionsCount] != null && args[optionsCount].startsWith("--")) {
+            optionsCount++;
+        }
+        if (optionsCount > 0) {
+            try {
+                options = WalkOptions.parse(Arrays.asList(args).subList(0, optionsCount));
+            } catch (IllegalArgumentException e) {
+                throw new WalkException(error(e.getMessage()), e);
+            }
+            args = Arrays.copyOfRange(args, optionsCount, args.length);
+        }
         if (args.length != 2) {
             throw new WalkException(error("invalid number of inputs. Expected input file and output file"));
         }
@@ -60,20 +81,128 @@ public class BaseWalk {
             }
         }
 
+        // duplicates are told apart mostly by hashes of file edges, the cache of whole-file hashes is not loaded for them
+        HashCache cache = null;
+        if (options.cache() != null && !options.duplicates()) {
+            try {
+                cache = HashCache.load(options.cache(), options.hashId());
+            } catch (IOException e) {
+                System.err.println(error("can't read cache, starting from scratch: " + e.getMessage()));
+                cache = HashCache.empty(options.cache(), options.hashId());
+            }
+        }
+
+        WalkStats stats = new WalkStats();
+        if (options.duplicates()) {
+            findDuplicates(inputPath, outputPath, stats);
+        } else if (options.watch()) {
+            watch(inputPath, outputPath, cache, stats);
+        } else {
+            hashAll(inputPath, outputPath, cache, stats);
+        }
+        report(stats);
+    }
+
+    private void report(WalkStats stats) throws WalkException {
+        stats.commitSummary(walkerName);
+        if (!options.stats()) {
+            return;
+        }
+        String summary = stats.summary(walkerName);
+        if (options.statsPath() == null) {
+            System.out.print(summary);
+            return;
+        }
+        try {
+            Files.writeString(options.statsPath(), summary, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new WalkException(error("can't write statistics"), e);
+        }
+    }
+
+    private void hashAll(Path inputPath, Path outputPath, HashCache cache, WalkStats stats) throws WalkException {
+        List<String> filepaths = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+        List<InvalidPathException> invalid = new ArrayList<>();
+        try (BufferedReader inputReader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
+            String filepath;
+            while ((filepath = inputReader.readLine()) != null) {
+                filepaths.add(filepath);
+                try {
+                    paths.add(Paths.get(filepath));
+                    invalid.add(null);
+                } catch (InvalidPathException e) {
+                    paths.add(null);
+                    invalid.add(e);
+                }
+            }
+        } catch (IOException e) {
+            throw new WalkException(error("can't open input file"), e);
+        }
+        RootTree roots = RootTree.of(paths.stream().filter(Objects::nonNull).toList(), depth);
+
+        try (WalkOutput outputWriter = WalkOutput.open(outputPath, options, stats);
+             ParallelWalker parallelWalker = options.isParallel() || options.virtualThreads() > 0
+                     ? new ParallelWalker(depth, options, cache, stats, roots)
+                     : null) {
+            WalkVisitor visitor = new WalkVisitor(outputWriter, options, cache, stats, roots);
+            for (int i = 0; i < filepaths.size(); i++) {
+                Path path = paths.get(i);
+                if (path == null) {
+                    visitor.writeInvalidPath(filepaths.get(i), invalid.get(i));
+                } else if (parallelWalker != null) {
+                    parallelWalker.walk(path, visitor);
+                } else {
+                    Files.walkFileTree(path, EnumSet.noneOf(FileVisitOption.class), depth, visitor);
+                }
+            }
+        } catch (IOException e) {
+            throw new WalkException(error("can't open output file"), e);
+        }
+
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                System.err.println(error("can't save cache: " + e.getMessage()));
+            }
+            System.out.println(walkerName + ": cache hits " + cache.hits() + ", misses " + cache.misses());
+        }
+    }
+
+    private void watch(Path inputPath, Path outputPath, HashCache cache, WalkStats stats) throws WalkException {
+        try (WatchWalker watcher = new WatchWalker(depth, options, cache, stats, outputPath, walkerName)) {
+            try (BufferedReader inputReader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
+                String filepath;
+                while ((filepath = inputReader.readLine()) != null) {
+                    watcher.add(filepath);
+                }
+            } catch (IOException e) {
+                throw new WalkException(error("can't open input file"), e);
+            }
+            watcher.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new WalkException(error("can't update output file"), e);
+        }
+    }
+
+    private void findDuplicates(Path inputPath, Path outputPath, WalkStats stats) throws WalkException {
         try (BufferedReader inputReader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
-            try (BufferedWriter outputWriter = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
-                WalkVisitor visitor = new WalkVisitor(outputWriter);
+            try (WalkWriter outputWriter = new WalkWriter(Files.newOutputStream(outputPath), options.hash().width(), options.asyncOutput(), stats);
+                 DuplicateFinder finder = new DuplicateFinder(depth, options, stats)) {
                 String filepath;
                 while ((filepath = inputReader.readLine()) != null) {
-                    Path path;
                     try {
-                        path = Paths.get(filepath);
+                        finder.add(Paths.get(filepath));
                     } catch (InvalidPathException e) {
-                        visitor.writeInvalidPath(filepath, e);
-                        continue;
+                        System.err.println(e.getMessage());
                     }
-                    Files.walkFileTree(path, EnumSet.noneOf(FileVisitOption.class), depth, visitor);
                 }
+                int groups = finder.write(outputWriter);
+                System.out.println(walkerName + ": duplicate groups " + groups
+                        + ", read " + finder.bytesRead() + " of " + finder.totalBytes() + " bytes");
             } catch (IOException e) {
                 throw new WalkException(error("can't open output file"), e);
             }
@@ -81,4 +210,4 @@ public class BaseWalk {
             throw new WalkException(error("can't open input file"), e);
         }
     }
-}
\ No newline at end of file
+}
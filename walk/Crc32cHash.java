@@ -0,0 +1,38 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+class Crc32cHash implements HashFunction {
+    @Override
+    public String name() {
+        return "crc32c";
+    }
+
+    @Override
+    public int width() {
+        return 8;
+    }
+
+    @Override
+    public State newState() {
+        return new State() {
+            private final CRC32C crc = new CRC32C();
+
+            @Override
+            public void reset() {
+                crc.reset();
+            }
+
+            @Override
+            public void update(ByteBuffer buffer) {
+                crc.update(buffer);
+            }
+
+            @Override
+            public long digest() {
+                return crc.getValue();
+            }
+        };
+    }
+}
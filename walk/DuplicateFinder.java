@@ -0,0 +1,177 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds groups of files with equal content reading as few bytes as possible:
+ * files are grouped by size, same-size files by the hash of their first and last blocks,
+ * and only files that still collide are hashed completely, so no file is read whole more than once.
+ */
+class DuplicateFinder implements AutoCloseable {
+    static final int EDGE_BLOCK = FileHasher.BUFFER_SIZE;
+
+    private static class Candidate {
+        private final Path path;
+        private final long size;
+        private long hash;
+        private boolean failed;
+
+        private Candidate(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    private interface Hashing {
+        long hash(FileHasher hasher, Candidate candidate) throws IOException;
+    }
+
+    private final int depth;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<FileHasher> hashers;
+    private final Map<Long, List<Candidate>> bySize = new LinkedHashMap<>();
+    private final Set<Object> seen = new HashSet<>();
+    private final LongAdder bytesRead = new LongAdder();
+    private long totalBytes;
+
+    DuplicateFinder(int depth, WalkOptions options, WalkStats stats) {
+        this.depth = depth;
+        this.pool = options.isParallel() ? new ForkJoinPool(options.threads()) : null;
+        this.hashers = ThreadLocal.withInitial(() -> options.newHasher(null, stats));
+    }
+
+    void add(Path root) throws IOException {
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), depth, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                Object key = attrs.fileKey() != null ? attrs.fileKey() : file.toAbsolutePath();
+                // the same file reached twice (overlapping roots or hard links) is not a duplicate of itself
+                if (attrs.isRegularFile() && attrs.size() > 0 && seen.add(key)) {
+                    bySize.computeIfAbsent(attrs.size(), size -> new ArrayList<>()).add(new Candidate(file, attrs.size()));
+                    totalBytes += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                System.err.println(e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    long bytesRead() {
+        return bytesRead.sum();
+    }
+
+    long totalBytes() {
+        return totalBytes;
+    }
+
+    int write(WalkWriter writer) throws IOException {
+        List<List<Candidate>> groups = new ArrayList<>();
+        for (List<Candidate> group : bySize.values()) {
+            if (group.size() > 1) {
+                groups.add(group);
+            }
+        }
+
+        groups = split(groups, (hasher, candidate) -> {
+            if (candidate.size <= 2 * EDGE_BLOCK) {
+                bytesRead.add(candidate.size);
+                return hasher.hash(candidate.path);
+            }
+            bytesRead.add(2 * EDGE_BLOCK);
+            return hasher.hashEdges(candidate.path, EDGE_BLOCK);
+        });
+
+        List<List<Candidate>> large = new ArrayList<>();
+        List<List<Candidate>> result = new ArrayList<>();
+        for (List<Candidate> group : groups) {
+            (group.get(0).size > 2 * EDGE_BLOCK ? large : result).add(group);
+        }
+        result.addAll(split(large, (hasher, candidate) -> {
+            bytesRead.add(candidate.size);
+            return hasher.hash(candidate.path);
+        }));
+
+        // the largest waste of space goes first
+        result.sort(Comparator.comparingLong((List<Candidate> group) -> group.get(0).size).reversed());
+        boolean first = true;
+        for (List<Candidate> group : result) {
+            if (!first) {
+                writer.newLine();
+            }
+            first = false;
+            for (Candidate candidate : group) {
+                writer.write(candidate.hash, candidate.path.toString());
+            }
+        }
+        return result.size();
+    }
+
+    private List<List<Candidate>> split(List<List<Candidate>> groups, Hashing hashing) {
+        List<Candidate> candidates = groups.stream().flatMap(Collection::stream).toList();
+        if (pool == null) {
+            candidates.forEach(candidate -> hash(candidate, hashing));
+        } else {
+            pool.submit(() -> candidates.parallelStream().forEach(candidate -> hash(candidate, hashing))).join();
+        }
+
+        List<List<Candidate>> result = new ArrayList<>();
+        for (List<Candidate> group : groups) {
+            Map<Long, List<Candidate>> byHash = new HashMap<>();
+            List<List<Candidate>> ordered = new ArrayList<>();
+            for (Candidate candidate : group) {
+                if (!candidate.failed) {
+                    byHash.computeIfAbsent(candidate.hash, hash -> {
+                        List<Candidate> list = new ArrayList<>();
+                        ordered.add(list);
+                        return list;
+                    }).add(candidate);
+                }
+            }
+            for (List<Candidate> list : ordered) {
+                if (list.size() > 1) {
+                    result.add(list);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void hash(Candidate candidate, Hashing hashing) {
+        try {
+            candidate.hash = hashing.hash(hashers.get(), candidate);
+        } catch (IOException e) {
+            candidate.failed = true;
+            System.err.println(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
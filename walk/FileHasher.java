@@ -0,0 +1,244 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Computes hash of a file, choosing the read strategy by file size:
+ * small files are read into a heap buffer, medium files through a direct buffer
+ * and large files are memory mapped region by region.
+ * Files larger than one chunk of the optional {@link TreeHasher} are hashed as a tree instead.
+ * In direct mode files are opened with {@code O_DIRECT} and read sequentially through an aligned buffer,
+ * falling back to the cached strategies whenever the filesystem refuses it.
+ */
+class FileHasher {
+    static final int BUFFER_SIZE = 1 << 12;
+    static final int DIRECT_BUFFER_SIZE = 1 << 18;
+    static final long DIRECT_THRESHOLD = 1 << 20;
+    static final long MAPPED_THRESHOLD = 1 << 26;
+    private static final long MAPPED_REGION_SIZE = 1 << 30;
+    private static final int DIRECT_ALIGNMENT = 1 << 12;
+    private static final OpenOption DIRECT = directOption();
+
+    private final long directThreshold;
+    private final long mappedThreshold;
+    private final HashFunction.State state;
+    private final TreeHasher treeHasher;
+    private final WalkStats stats;
+    private final ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+    private ByteBuffer alignedBuffer;
+    private boolean directIo;
+
+    FileHasher(HashFunction function) {
+        this(function, null, null);
+    }
+
+    FileHasher(HashFunction function, TreeHasher treeHasher, WalkStats stats) {
+        this(function, treeHasher, stats, BUFFER_SIZE, DIRECT_THRESHOLD, MAPPED_THRESHOLD, false);
+    }
+
+    FileHasher(HashFunction function, TreeHasher treeHasher, WalkStats stats,
+               int bufferSize, long directThreshold, long mappedThreshold, boolean directIo) {
+        this.state = function.newState();
+        this.treeHasher = treeHasher;
+        this.stats = stats;
+        this.heapBuffer = ByteBuffer.allocate(bufferSize);
+        this.directThreshold = directThreshold;
+        this.mappedThreshold = mappedThreshold;
+        this.directIo = directIo && DIRECT != null;
+    }
+
+    // O_DIRECT is only exposed by a JDK-internal option, without it direct mode is off
+    private static OpenOption directOption() {
+        try {
+            return (OpenOption) Class.forName("com.sun.nio.file.ExtendedOpenOption").getField("DIRECT").get(null);
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+            return null;
+        }
+    }
+
+    long hash(Path filepath) throws IOException {
+        WalkEvents.FileHash event = new WalkEvents.FileHash();
+        event.begin();
+        long start = System.nanoTime();
+        FileChannel channel = directIo ? openDirect(filepath) : null;
+        boolean direct = channel != null;
+        if (!direct) {
+            channel = FileChannel.open(filepath, StandardOpenOption.READ);
+        }
+        try {
+            long opened = System.nanoTime();
+            long size = channel.size();
+            boolean tree = treeHasher != null && size > treeHasher.chunkSize();
+            long hash;
+            if (direct) {
+                try {
+                    hash = hashDirect(channel, size, tree);
+                } catch (IOException e) {
+                    // misaligned or short read, the file is hashed once more through the page cache
+                    channel.close();
+                    channel = FileChannel.open(filepath, StandardOpenOption.READ);
+                    hash = hashCached(channel, size, tree);
+                }
+            } else {
+                hash = hashCached(channel, size, tree);
+            }
+            long read = tree ? size : channel.position();
+            if (stats != null) {
+                stats.fileHashed(opened - start, System.nanoTime() - opened, read);
+            }
+            if (event.shouldCommit()) {
+                event.path = filepath.toString();
+                event.bytes = read;
+                event.openTime = opened - start;
+                event.commit();
+            }
+            return hash;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private FileChannel openDirect(Path filepath) {
+        try {
+            return FileChannel.open(filepath, StandardOpenOption.READ, DIRECT);
+        } catch (UnsupportedOperationException e) {
+            directIo = false;
+        } catch (IOException e) {
+            // tmpfs and some network filesystems reject O_DIRECT, any real error shows up on the second open
+        }
+        return null;
+    }
+
+    private long hashCached(FileChannel channel, long size, boolean tree) throws IOException {
+        if (tree) {
+            return treeHasher.hash(channel, size);
+        }
+        state.reset();
+        if (size >= mappedThreshold) {
+            hashMapped(channel, size);
+            hashRead(channel, heapBuffer);
+        } else if (size >= directThreshold) {
+            hashRead(channel, directBuffer());
+        } else {
+            hashRead(channel, heapBuffer);
+        }
+        return state.digest();
+    }
+
+    /**
+     * Reads the file sequentially in whole aligned blocks, splitting the stream into tree chunks
+     * on the fly so that the result equals the one of {@link #hashCached}.
+     */
+    private long hashDirect(FileChannel channel, long size, boolean tree) throws IOException {
+        ByteBuffer buffer = alignedBuffer();
+        long chunk = tree ? treeHasher.chunkSize() : Long.MAX_VALUE;
+        long end = tree ? size : Long.MAX_VALUE;
+        long[] leaves = tree ? new long[treeHasher.leafCount(size)] : null;
+        int leaf = 0;
+        long inChunk = 0;
+        long position = 0;
+        state.reset();
+        int read = buffer.capacity();
+        // a short read leaves the channel unaligned, so reading stops there and the position is checked below
+        while (read == buffer.capacity() && position < end) {
+            buffer.clear();
+            read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining() && position < end) {
+                if (inChunk == chunk) {
+                    leaves[leaf++] = state.digest();
+                    state.reset();
+                    inChunk = 0;
+                }
+                int limit = buffer.limit();
+                int length = (int) Math.min(buffer.remaining(), Math.min(chunk - inChunk, end - position));
+                buffer.limit(buffer.position() + length);
+                state.update(buffer);
+                buffer.limit(limit);
+                inChunk += length;
+                position += length;
+            }
+        }
+        if (position != size) {
+            throw new IOException("short direct read at " + position + " of " + size + " bytes");
+        }
+        if (!tree) {
+            return state.digest();
+        }
+        leaves[leaf] = state.digest();
+        return treeHasher.combine(leaves);
+    }
+
+    /**
+     * Hashes only the first and the last {@code block} bytes of the file.
+     */
+    long hashEdges(Path filepath, int block) throws IOException {
+        try (FileChannel channel = FileChannel.open(filepath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            state.reset();
+            hashRange(channel, 0, Math.min(block, size));
+            hashRange(channel, Math.max(0, size - block), Math.min(block, size));
+            return state.digest();
+        }
+    }
+
+    private void hashRange(FileChannel channel, long position, long length) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            heapBuffer.clear();
+            heapBuffer.limit((int) Math.min(heapBuffer.capacity(), end - position));
+            int read = channel.read(heapBuffer, position);
+            if (read < 0) {
+                break;
+            }
+            heapBuffer.flip();
+            state.update(heapBuffer);
+            position += read;
+        }
+    }
+
+    private ByteBuffer directBuffer() {
+        if (directBuffer == null) {
+            directBuffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+        return directBuffer;
+    }
+
+    private ByteBuffer alignedBuffer() {
+        if (alignedBuffer == null) {
+            alignedBuffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE + DIRECT_ALIGNMENT)
+                    .alignedSlice(DIRECT_ALIGNMENT)
+                    .slice(0, DIRECT_BUFFER_SIZE);
+        }
+        return alignedBuffer;
+    }
+
+    private void hashRead(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            state.update(buffer);
+            buffer.clear();
+        }
+    }
+
+    private void hashMapped(FileChannel channel, long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long length = Math.min(MAPPED_REGION_SIZE, size - position);
+            state.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            position += length;
+        }
+        // the file may have grown since size() was taken, the tail is read as usual
+        channel.position(position);
+    }
+}
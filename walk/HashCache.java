@@ -0,0 +1,180 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * On-disk cache of file hashes keyed by path and validated by size, modification time and file key.
+ * Only the entries visited during the run are saved, so removed files drop out of the cache.
+ */
+class HashCache {
+    private static final int MAGIC = 0x57414c4b;
+    private static final int VERSION = 2;
+    // files modified this close to the start of the run may change again within the same mtime tick
+    private static final long RACY_WINDOW = TimeUnit.SECONDS.toNanos(2);
+
+    private record Entry(long size, long modified, String fileKey, long hash) {
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && modified == modifiedOf(attrs)
+                    && Objects.equals(fileKey, fileKeyOf(attrs));
+        }
+    }
+
+    private final Path cachePath;
+    private final String algorithm;
+    private final Map<String, Entry> stored;
+    private final Map<String, Entry> visited = new ConcurrentHashMap<>();
+    private final long startTime = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private HashCache(Path cachePath, String algorithm, Map<String, Entry> stored) {
+        this.cachePath = cachePath;
+        this.algorithm = algorithm;
+        this.stored = stored;
+    }
+
+    static HashCache empty(Path cachePath, String algorithm) {
+        return new HashCache(cachePath, algorithm, new ConcurrentHashMap<>());
+    }
+
+    static HashCache load(Path cachePath, String algorithm) throws IOException {
+        Map<String, Entry> stored = new ConcurrentHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cachePath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("unsupported cache format: " + cachePath);
+            }
+            if (!in.readUTF().equals(algorithm)) {
+                // hashes of another algorithm are useless, the cache is rebuilt
+                return empty(cachePath, algorithm);
+            }
+            int count = in.readInt();
+            String previous = "";
+            for (int i = 0; i < count; i++) {
+                int common = in.readUnsignedShort();
+                if (common > previous.length()) {
+                    throw new IOException("corrupt cache: " + cachePath);
+                }
+                String path = previous.substring(0, common) + in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                String fileKey = in.readUTF();
+                long hash = in.readLong();
+                stored.put(path, new Entry(size, modified, fileKey.isEmpty() ? null : fileKey, hash));
+                previous = path;
+            }
+        } catch (NoSuchFileException ignored) {
+            // first run, nothing cached yet
+        } catch (EOFException e) {
+            throw new IOException("truncated cache: " + cachePath, e);
+        }
+        return new HashCache(cachePath, algorithm, stored);
+    }
+
+    long hash(Path filepath, BasicFileAttributes attrs, FileHasher hasher) throws IOException {
+        if (!attrs.isRegularFile()) {
+            return hasher.hash(filepath);
+        }
+        String key = filepath.toAbsolutePath().toString();
+        Entry entry = visited.get(key);
+        if (entry == null) {
+            entry = stored.get(key);
+        }
+        if (entry != null && entry.matches(attrs)) {
+            hits.increment();
+        } else {
+            misses.increment();
+            entry = new Entry(attrs.size(), modifiedOf(attrs), fileKeyOf(attrs), hasher.hash(filepath));
+        }
+        if (entry.modified() < startTime - RACY_WINDOW) {
+            visited.put(key, entry);
+        }
+        return entry.hash();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    void save() throws IOException {
+        Path parent = cachePath.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        save(Files.createTempFile(parent, cachePath.getFileName().toString(), ".tmp"));
+    }
+
+    /**
+     * Writes the cache to {@code temp} and moves it over the cache file.
+     */
+    void save(Path temp) throws IOException {
+        List<String> paths = new ArrayList<>(visited.keySet());
+        paths.sort(null);
+        Files.createDirectories(temp.toAbsolutePath().getParent());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(algorithm);
+                out.writeInt(paths.size());
+                String previous = "";
+                for (String path : paths) {
+                    int common = commonPrefix(previous, path);
+                    Entry entry = visited.get(path);
+                    out.writeShort(common);
+                    out.writeUTF(path.substring(common));
+                    out.writeLong(entry.size());
+                    out.writeLong(entry.modified());
+                    out.writeUTF(entry.fileKey() == null ? "" : entry.fileKey());
+                    out.writeLong(entry.hash());
+                    previous = path;
+                }
+            }
+            try {
+                Files.move(temp, cachePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, cachePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int limit = Math.min(Math.min(a.length(), b.length()), 0xffff);
+        int i = 0;
+        while (i < limit && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static long modifiedOf(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static String fileKeyOf(BasicFileAttributes attrs) {
+        Object fileKey = attrs.fileKey();
+        return fileKey == null ? null : fileKey.toString();
+    }
+}
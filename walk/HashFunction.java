@@ -0,0 +1,47 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Hash algorithm used for file checksums.
+ * Additional algorithms can be plugged in through {@link ServiceLoader}.
+ */
+public interface HashFunction {
+    String name();
+
+    /**
+     * Number of hex digits in the printed hash.
+     */
+    int width();
+
+    State newState();
+
+    /**
+     * Incremental hash computation. {@link #update} consumes the whole remaining part of the buffer.
+     */
+    interface State {
+        void reset();
+
+        void update(ByteBuffer buffer);
+
+        long digest();
+    }
+
+    static List<HashFunction> available() {
+        List<HashFunction> functions = new ArrayList<>(List.of(new JenkinsHash(), new Crc32cHash(), new XxHash64()));
+        ServiceLoader.load(HashFunction.class).forEach(functions::add);
+        return functions;
+    }
+
+    static HashFunction forName(String name) {
+        for (HashFunction function : available()) {
+            if (function.name().equalsIgnoreCase(name)) {
+                return function;
+            }
+        }
+        throw new IllegalArgumentException("unknown hash algorithm " + name);
+    }
+}
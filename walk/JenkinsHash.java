@@ -0,0 +1,59 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.nio.ByteBuffer;
+
+class JenkinsHash implements HashFunction {
+    @Override
+    public String name() {
+        return "jenkins";
+    }
+
+    @Override
+    public int width() {
+        return 8;
+    }
+
+    @Override
+    public State newState() {
+        return new State() {
+            private int hash;
+
+            @Override
+            public void reset() {
+                hash = 0;
+            }
+
+            @Override
+            public void update(ByteBuffer buffer) {
+                int hash = this.hash;
+                if (buffer.hasArray()) {
+                    byte[] array = buffer.array();
+                    int end = buffer.arrayOffset() + buffer.limit();
+                    for (int i = buffer.arrayOffset() + buffer.position(); i < end; i++) {
+                        hash += array[i] & 0xff;
+                        hash += hash << 10;
+                        hash ^= hash >>> 6;
+                    }
+                } else {
+                    int end = buffer.limit();
+                    for (int i = buffer.position(); i < end; i++) {
+                        hash += buffer.get(i) & 0xff;
+                        hash += hash << 10;
+                        hash ^= hash >>> 6;
+                    }
+                }
+                buffer.position(buffer.limit());
+                this.hash = hash;
+            }
+
+            @Override
+            public long digest() {
+                int hash = this.hash;
+                hash += hash << 3;
+                hash ^= hash >>> 11;
+                hash += hash << 15;
+                return hash & 0xffffffffL;
+            }
+        };
+    }
+}
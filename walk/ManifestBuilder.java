@@ -0,0 +1,108 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects walk results in any order and writes them as a sorted binary manifest.
+ * Results that don't fit into the memory budget are sorted and spilled into temporary runs,
+ * which are merged into the manifest on close.
+ */
+class ManifestBuilder implements WalkOutput {
+    static final long RUN_BYTES = 64L << 20;
+    // rough per-entry overhead of the record, its array header and the list slot
+    private static final int ENTRY_OVERHEAD = 48;
+
+    private record Entry(byte[] path, long hash) {
+    }
+
+    private final Path target;
+    private final String algorithm;
+    private final int width;
+    private final long runBytes;
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private long bytes;
+
+    ManifestBuilder(Path target, String algorithm, int width) {
+        this(target, algorithm, width, RUN_BYTES);
+    }
+
+    ManifestBuilder(Path target, String algorithm, int width, long runBytes) {
+        this.target = target;
+        this.algorithm = algorithm;
+        this.width = width;
+        this.runBytes = runBytes;
+    }
+
+    @Override
+    public void write(long hash, String path) throws IOException {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        entries.add(new Entry(bytes, hash));
+        this.bytes += bytes.length + ENTRY_OVERHEAD;
+        if (this.bytes >= runBytes) {
+            Path parent = target.toAbsolutePath().getParent();
+            Path run = Files.createTempFile(parent, target.getFileName().toString(), ".run");
+            runs.add(run);
+            writeSorted(run);
+        }
+    }
+
+    private void writeSorted(Path file) throws IOException {
+        entries.sort((a, b) -> Arrays.compareUnsigned(a.path(), b.path()));
+        try (ManifestWriter writer = new ManifestWriter(file, algorithm, width)) {
+            for (Entry entry : entries) {
+                writer.write(entry.path(), entry.hash());
+            }
+        }
+        entries.clear();
+        bytes = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (runs.isEmpty()) {
+            writeSorted(target);
+            return;
+        }
+        List<ManifestReader> readers = new ArrayList<>();
+        try {
+            if (!entries.isEmpty()) {
+                Path parent = target.toAbsolutePath().getParent();
+                Path run = Files.createTempFile(parent, target.getFileName().toString(), ".run");
+                runs.add(run);
+                writeSorted(run);
+            }
+            PriorityQueue<ManifestReader> queue = new PriorityQueue<>(ManifestReader::comparePath);
+            for (Path run : runs) {
+                ManifestReader reader = new ManifestReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            try (ManifestWriter writer = new ManifestWriter(target, algorithm, width)) {
+                while (!queue.isEmpty()) {
+                    ManifestReader reader = queue.poll();
+                    writer.write(reader.pathBytes(), reader.hash());
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+            }
+        } finally {
+            for (ManifestReader reader : readers) {
+                reader.close();
+            }
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+/**
+ * Compares two binary manifests in one streaming merge pass, memory doesn't depend on their size.
+ * Every difference is written as {@code A <hash> <path>} for added, {@code D <hash> <path>} for deleted
+ * and {@code M <new hash> <path>} for modified files.
+ * With {@code --lookup} hashes of single paths are found through the block index instead, reading one block each.
+ */
+public class ManifestDiff {
+    public static void main(String[] args) {
+        if (args != null && args.length >= 3 && "--lookup".equals(args[0])) {
+            lookup(args);
+            return;
+        }
+        if (args == null || args.length < 2 || args.length > 3) {
+            System.err.println("usage: ManifestDiff <old manifest> <new manifest> [output]");
+            System.err.println("       ManifestDiff --lookup <manifest> <path>...");
+            return;
+        }
+        try {
+            Path output = args.length == 3 ? Path.of(args[2]) : null;
+            long changes = diff(Path.of(args[0]), Path.of(args[1]), output);
+            System.err.println("ManifestDiff: " + changes + " changes");
+        } catch (InvalidPathException e) {
+            System.err.println("ManifestDiffError: invalid path " + e.getInput());
+        } catch (IOException e) {
+            System.err.println("ManifestDiffError: " + e.getMessage());
+        }
+    }
+
+    private static void lookup(String[] args) {
+        try (ManifestReader manifest = new ManifestReader(Path.of(args[1]))) {
+            String format = "%0" + manifest.width() + "x %s%n";
+            for (int i = 2; i < args.length; i++) {
+                Long hash = manifest.lookup(args[i]);
+                if (hash == null) {
+                    System.err.println("ManifestDiff: " + args[i] + " is not in the manifest");
+                } else {
+                    System.out.printf(format, hash, args[i]);
+                }
+            }
+        } catch (InvalidPathException e) {
+            System.err.println("ManifestDiffError: invalid path " + e.getInput());
+        } catch (IOException e) {
+            System.err.println("ManifestDiffError: " + e.getMessage());
+        }
+    }
+
+    static long diff(Path oldPath, Path newPath, Path output) throws IOException {
+        try (ManifestReader oldManifest = new ManifestReader(oldPath);
+             ManifestReader newManifest = new ManifestReader(newPath);
+             Writer writer = output == null
+                     ? new BufferedWriter(new OutputStreamWriter(standardOutput(), StandardCharsets.UTF_8))
+                     : Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            if (!oldManifest.algorithm().equals(newManifest.algorithm())) {
+                throw new IOException("manifests use different hashes: "
+                        + oldManifest.algorithm() + " and " + newManifest.algorithm());
+            }
+            String format = "%c %0" + newManifest.width() + "x %s%n";
+            long changes = 0;
+            boolean hasOld = oldManifest.next();
+            boolean hasNew = newManifest.next();
+            while (hasOld || hasNew) {
+                int order = !hasOld ? 1 : !hasNew ? -1 : oldManifest.comparePath(newManifest);
+                if (order < 0) {
+                    writer.write(String.format(format, 'D', oldManifest.hash(), oldManifest.path()));
+                    hasOld = oldManifest.next();
+                    changes++;
+                } else if (order > 0) {
+                    writer.write(String.format(format, 'A', newManifest.hash(), newManifest.path()));
+                    hasNew = newManifest.next();
+                    changes++;
+                } else {
+                    if (oldManifest.hash() != newManifest.hash()) {
+                        writer.write(String.format(format, 'M', newManifest.hash(), newManifest.path()));
+                        changes++;
+                    }
+                    hasOld = oldManifest.next();
+                    hasNew = newManifest.next();
+                }
+            }
+            writer.flush();
+            return changes;
+        }
+    }
+
+    // closing the writer only flushes standard output, which stays open for the rest of the program
+    private static OutputStream standardOutput() {
+        return new FilterOutputStream(System.out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+}
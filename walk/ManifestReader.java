@@ -0,0 +1,227 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streams entries of a manifest written by {@link ManifestWriter} in path order,
+ * keeping only the current entry in memory; single paths can be looked up through the block index.
+ */
+class ManifestReader implements Closeable {
+    private final Path file;
+    private final FileChannel channel;
+    private final DataInputStream in;
+    private final String algorithm;
+    private final int width;
+    private final int blockSize;
+    private final long count;
+    private final long indexOffset;
+    private final int blocks;
+    private long read;
+    private byte[] path = new byte[256];
+    private int pathLength;
+    private long hash;
+    private byte[][] indexPaths;
+    private long[] indexOffsets;
+
+    ManifestReader(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer footer = ByteBuffer.allocate(ManifestWriter.FOOTER_SIZE);
+            long size = channel.size();
+            if (size < ManifestWriter.FOOTER_SIZE || channel.read(footer, size - ManifestWriter.FOOTER_SIZE) != footer.capacity()) {
+                throw invalid("too short");
+            }
+            footer.flip();
+            count = footer.getLong();
+            indexOffset = footer.getLong();
+            blocks = footer.getInt();
+            if (footer.getInt() != ManifestWriter.MAGIC) {
+                throw invalid("bad footer");
+            }
+
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            if (in.readInt() != ManifestWriter.MAGIC || in.readInt() != ManifestWriter.VERSION) {
+                throw invalid("bad header");
+            }
+            algorithm = in.readUTF();
+            width = in.readUnsignedByte();
+            blockSize = in.readInt();
+            if (blockSize <= 0) {
+                throw invalid("bad block size");
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private IOException invalid(String reason) {
+        return new IOException("invalid manifest " + file + ": " + reason);
+    }
+
+    String algorithm() {
+        return algorithm;
+    }
+
+    int width() {
+        return width;
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * Moves to the next entry, returns {@code false} after the last one.
+     */
+    boolean next() throws IOException {
+        if (read == count) {
+            return false;
+        }
+        int shared = readVarint(in);
+        if (read % blockSize == 0 && shared != 0 || shared > pathLength) {
+            throw invalid("corrupted entry");
+        }
+        pathLength = readPath(in, shared);
+        hash = in.readLong();
+        read++;
+        return true;
+    }
+
+    private int readPath(DataInput input, int shared) throws IOException {
+        int suffix = readVarint(input);
+        if (suffix < 0 || shared + suffix < 0) {
+            throw invalid("corrupted entry");
+        }
+        if (path.length < shared + suffix) {
+            path = Arrays.copyOf(path, Math.max(shared + suffix, path.length * 2));
+        }
+        input.readFully(path, shared, suffix);
+        return shared + suffix;
+    }
+
+    byte[] pathBytes() {
+        return Arrays.copyOf(path, pathLength);
+    }
+
+    String path() {
+        return new String(path, 0, pathLength, StandardCharsets.UTF_8);
+    }
+
+    long hash() {
+        return hash;
+    }
+
+    /**
+     * Compares current paths of two readers in the manifest order.
+     */
+    int comparePath(ManifestReader other) {
+        return Arrays.compareUnsigned(path, 0, pathLength, other.path, 0, other.pathLength);
+    }
+
+    /**
+     * Finds hash of the given path reading one block, the streaming position is not affected.
+     *
+     * @return hash or {@code null} if there is no such path
+     */
+    Long lookup(String target) throws IOException {
+        byte[] key = target.getBytes(StandardCharsets.UTF_8);
+        loadIndex();
+        int low = 0;
+        int high = blocks - 1;
+        int block = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(indexPaths[middle], key) <= 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (block < 0) {
+            return null;
+        }
+        long start = indexOffsets[block];
+        long end = block + 1 < blocks ? indexOffsets[block + 1] : indexOffset;
+        ByteBuffer bytes = readFully(start, end - start);
+        DataInputStream blockInput = new DataInputStream(new ByteArrayInputStream(bytes.array()));
+        byte[] current = new byte[0];
+        long entries = Math.min(blockSize, count - (long) block * blockSize);
+        for (long i = 0; i < entries; i++) {
+            int shared = readVarint(blockInput);
+            int suffix = readVarint(blockInput);
+            byte[] next = Arrays.copyOf(current, shared + suffix);
+            blockInput.readFully(next, shared, suffix);
+            long entryHash = blockInput.readLong();
+            int order = Arrays.compareUnsigned(next, key);
+            if (order == 0) {
+                return entryHash;
+            } else if (order > 0) {
+                return null;
+            }
+            current = next;
+        }
+        return null;
+    }
+
+    private void loadIndex() throws IOException {
+        if (indexPaths != null) {
+            return;
+        }
+        ByteBuffer bytes = readFully(indexOffset, channel.size() - ManifestWriter.FOOTER_SIZE - indexOffset);
+        DataInputStream indexInput = new DataInputStream(new ByteArrayInputStream(bytes.array()));
+        byte[][] paths = new byte[blocks][];
+        long[] offsets = new long[blocks];
+        for (int i = 0; i < blocks; i++) {
+            paths[i] = new byte[readVarint(indexInput)];
+            indexInput.readFully(paths[i]);
+            offsets[i] = indexInput.readLong();
+        }
+        indexPaths = paths;
+        indexOffsets = offsets;
+    }
+
+    private ByteBuffer readFully(long position, long length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw invalid("bad offsets");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw invalid("truncated");
+            }
+        }
+        return buffer;
+    }
+
+    static int readVarint(DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in manifest");
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,129 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes binary manifest of entries given in the increasing order of their UTF-8 paths.
+ * <p>
+ * Layout: header ({@code MAGIC, VERSION, algorithm, width, BLOCK_SIZE}), blocks of {@code BLOCK_SIZE} entries,
+ * block index and fixed-size footer ({@code count, indexOffset, blocks, MAGIC}).
+ * Entry is {@code varint shared, varint suffixLength, suffix, long hash}, where paths are prefix-compressed
+ * against the previous entry of the same block, so every block can be decoded on its own.
+ * Index entry is {@code varint length, first path of the block, long offset of the block}.
+ */
+class ManifestWriter implements Closeable {
+    static final int MAGIC = 0x574c4b4d;
+    static final int VERSION = 1;
+    static final int BLOCK_SIZE = 256;
+    static final int FOOTER_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private record IndexEntry(byte[] firstPath, long offset) {
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final List<IndexEntry> index = new ArrayList<>();
+    private byte[] previous = new byte[0];
+    private long count;
+    private boolean hasPrevious;
+
+    ManifestWriter(Path path, String algorithm, int width) throws IOException {
+        this(Files.newOutputStream(path), algorithm, width);
+    }
+
+    ManifestWriter(OutputStream output, String algorithm, int width) throws IOException {
+        counter = new CountingOutputStream(new BufferedOutputStream(output, 1 << 16));
+        out = new DataOutputStream(counter);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(algorithm);
+        out.writeByte(width);
+        out.writeInt(BLOCK_SIZE);
+    }
+
+    /**
+     * Appends the entry, an entry with the same path as the previous one is skipped.
+     */
+    void write(byte[] path, long hash) throws IOException {
+        if (hasPrevious) {
+            int order = Arrays.compareUnsigned(previous, path);
+            if (order == 0) {
+                return;
+            }
+            if (order > 0) {
+                throw new IllegalStateException("manifest entries must be sorted by path");
+            }
+        }
+        int shared;
+        if (count % BLOCK_SIZE == 0) {
+            index.add(new IndexEntry(path, counter.count));
+            shared = 0;
+        } else {
+            shared = Arrays.mismatch(previous, path);
+            if (shared < 0) {
+                shared = path.length;
+            }
+        }
+        writeVarint(out, shared);
+        writeVarint(out, path.length - shared);
+        out.write(path, shared, path.length - shared);
+        out.writeLong(hash);
+        previous = path;
+        hasPrevious = true;
+        count++;
+    }
+
+    static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (out) {
+            long indexOffset = counter.count;
+            for (IndexEntry entry : index) {
+                writeVarint(out, entry.firstPath().length);
+                out.write(entry.firstPath());
+                out.writeLong(entry.offset());
+            }
+            out.writeLong(count);
+            out.writeLong(indexOffset);
+            out.writeInt(index.size());
+            out.writeInt(MAGIC);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Parallel counterpart of {@code Files.walkFileTree}: every directory entry becomes a task
+ * and results are written in the order the sequential walk visits them.
+ * Tasks are scheduled by the writing thread, which keeps at most {@link #WINDOW} of them
+ * scheduled and not yet written, picking the entries of listed directories that come first in the walk order.
+ * A directory task lists paths only and a written task is dropped by its directory,
+ * so memory is bounded by the window and the listed directories, not by the tree.
+ * Tasks run either on a fork/join pool or each on its own virtual thread, started only once one of
+ * a limited number of I/O permits is taken, which keeps hundreds of requests in flight on high-latency filesystems.
+ * Hashers and their buffers are reused through a pool, which never holds more of them
+ * than tasks may run at once: pool threads or I/O permits.
+ */
+class ParallelWalker implements AutoCloseable {
+    // tasks scheduled ahead of the writer
+    private static final int WINDOW = 1 << 14;
+
+    private final ForkJoinPool pool;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int depth;
+    private final HashCache cache;
+    private final WalkStats stats;
+    private final RootTree roots;
+    private final TreeHasher treeHasher;
+    private final WalkOptions options;
+    private final Queue<FileHasher> hashers = new ConcurrentLinkedQueue<>();
+
+    ParallelWalker(int depth, WalkOptions options, HashCache cache, WalkStats stats, RootTree roots) {
+        if (options.virtualThreads() > 0) {
+            this.pool = null;
+            this.executor = Executors.newVirtualThreadPerTaskExecutor();
+            this.permits = new Semaphore(options.virtualThreads());
+        } else {
+            this.pool = new ForkJoinPool(options.threads());
+            this.executor = null;
+            this.permits = null;
+        }
+        this.depth = depth;
+        this.cache = cache;
+        this.stats = stats;
+        this.roots = roots;
+        this.options = options;
+        this.treeHasher = options.newTreeHasher();
+    }
+
+    void walk(Path root, WalkVisitor visitor) throws IOException {
+        Walk walk = new Walk();
+        Node node = new Node(walk, root, depth, new int[0]);
+        walk.schedule(node);
+        walk.write(node, visitor);
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        } else {
+            executor.shutdownNow();
+        }
+    }
+
+    // next unscheduled entry of a listed directory
+    private record Next(Node directory, int index) {
+    }
+
+    // walk order of the entries: lexicographic order of their index paths
+    private static int compare(Next a, Next b) {
+        int[] x = a.directory().order;
+        int[] y = b.directory().order;
+        int common = Math.min(x.length, y.length);
+        int result = Arrays.compare(x, 0, common, y, 0, common);
+        if (result != 0) {
+            return result;
+        }
+        int left = x.length == common ? a.index() : x[common];
+        int right = y.length == common ? b.index() : y[common];
+        return left != right ? Integer.compare(left, right) : Integer.compare(x.length, y.length);
+    }
+
+    // scheduling state of a single root, confined to the writing thread except for the completion queue
+    private class Walk {
+        private final BlockingQueue<Node> completed = new LinkedBlockingQueue<>();
+        private final PriorityQueue<Next> next = new PriorityQueue<>(ParallelWalker::compare);
+        private int pending;
+
+        private void write(Node node, WalkVisitor visitor) throws IOException {
+            await(node);
+            pending--;
+            if (node.failure != null) {
+                visitor.writeInvalidPath(node.path, node.failure);
+            } else if (node.entries == null) {
+                visitor.write(node.path, node.hash);
+            } else {
+                Node[] children = node.children;
+                for (int i = 0; i < children.length; i++) {
+                    if (node.scheduled == i) {
+                        // the writer caught up with the window
+                        scheduleChild(node);
+                    }
+                    Node child = children[i];
+                    children[i] = null;
+                    write(child, visitor);
+                }
+                if (node.iterationFailure != null) {
+                    throw node.iterationFailure;
+                }
+            }
+        }
+
+        private void await(Node node) throws InterruptedIOException {
+            while (true) {
+                for (Node done = completed.poll(); done != null; done = completed.poll()) {
+                    completed(done);
+                }
+                fill();
+                if (node.done) {
+                    return;
+                }
+                try {
+                    completed(completed.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("walk was interrupted");
+                }
+            }
+        }
+
+        private void completed(Node node) {
+            if (node.entries != null && node.entries.length > 0) {
+                next.add(new Next(node, 0));
+            }
+        }
+
+        private void fill() throws InterruptedIOException {
+            while (pending < WINDOW && !next.isEmpty()) {
+                Next candidate = next.poll();
+                // an entry scheduled by the writer leaves its candidate stale
+                if (candidate.index() == candidate.directory().scheduled) {
+                    scheduleChild(candidate.directory());
+                }
+            }
+        }
+
+        private void scheduleChild(Node directory) throws InterruptedIOException {
+            int i = directory.scheduled++;
+            int[] order = Arrays.copyOf(directory.order, directory.order.length + 1);
+            order[directory.order.length] = i;
+            Node child = new Node(this, directory.entries[i], directory.depth - 1, order);
+            directory.entries[i] = null;
+            directory.children[i] = child;
+            if (directory.scheduled < directory.entries.length) {
+                next.add(new Next(directory, directory.scheduled));
+            }
+            schedule(child);
+        }
+
+        // a virtual thread is started only with a permit, so there are no more of them than permits
+        private void schedule(Node node) throws InterruptedIOException {
+            pending++;
+            if (executor == null) {
+                pool.execute(node);
+                return;
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("walk was interrupted");
+            }
+            executor.execute(() -> {
+                try {
+                    node.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+    }
+
+    private class Node implements Runnable {
+        private final Walk walk;
+        private final Path path;
+        private final int depth;
+        // index of the node and of its ancestors among their siblings
+        private final int[] order;
+        private long hash;
+        private IOException failure;
+        private IOException iterationFailure;
+        // entry paths of a listed directory, each is dropped once its task is created
+        private Path[] entries;
+        private Node[] children;
+        // entries with a task, written by the writing thread only
+        private int scheduled;
+        private volatile boolean done;
+
+        private Node(Walk walk, Path path, int depth, int[] order) {
+            this.walk = walk;
+            this.path = path;
+            this.depth = depth;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            compute();
+            done = true;
+            walk.completed.add(this);
+        }
+
+        private void compute() {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+            if (attrs.isDirectory() && depth > 0) {
+                list();
+            } else {
+                FileHasher hasher = hashers.poll();
+                if (hasher == null) {
+                    hasher = options.newHasher(treeHasher, stats);
+                }
+                try {
+                    hash = WalkVisitor.hash(path, attrs, hasher, cache, roots);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    hashers.offer(hasher);
+                }
+            }
+        }
+
+        private void list() {
+            WalkEvents.DirectoryList event = new WalkEvents.DirectoryList();
+            event.begin();
+            long start = System.nanoTime();
+            DirectoryStream<Path> stream;
+            try {
+                stream = Files.newDirectoryStream(path);
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+            List<Path> paths = new ArrayList<>();
+            try (stream) {
+                for (Path entry : stream) {
+                    paths.add(entry);
+                }
+            } catch (DirectoryIteratorException e) {
+                iterationFailure = e.getCause();
+            } catch (IOException e) {
+                iterationFailure = e;
+            }
+            children = new Node[paths.size()];
+            entries = paths.toArray(Path[]::new);
+            long nanos = System.nanoTime() - start;
+            stats.directoryListed(path, nanos, entries.length);
+            if (event.shouldCommit()) {
+                event.path = path.toString();
+                event.entries = entries.length;
+                event.selfTime = nanos;
+                event.commit();
+            }
+        }
+    }
+}
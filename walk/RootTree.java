@@ -0,0 +1,144 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prefix tree of walk roots. A root is shared if it is listed several times or lies within reach of another root;
+ * hashes of files under shared roots are remembered, so every such file is read once
+ * while still written once for every root that covers it. A hash is forgotten once the last of these roots gets it,
+ * and files covered by a single root are not remembered at all.
+ */
+class RootTree {
+    private static class Node {
+        private final Map<Path, Node> children = new HashMap<>();
+        private int roots;
+        private boolean shared;
+    }
+
+    // hash of a file and the number of roots that are still to get it
+    private record Remembered(long hash, AtomicInteger uses) {
+    }
+
+    private final Node top = new Node();
+    private final Map<Path, Remembered> hashes = new ConcurrentHashMap<>();
+    private final int depth;
+
+    private RootTree(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Builds tree of the given roots, {@code null} if no two roots overlap.
+     */
+    static RootTree of(List<Path> roots, int depth) {
+        RootTree tree = new RootTree(depth);
+        for (Path root : roots) {
+            Path key = key(root);
+            if (key != null) {
+                tree.insert(key).roots++;
+            }
+        }
+        return tree.mark(tree.top, -1, 0, depth) ? tree : null;
+    }
+
+    private boolean mark(Node node, int rootLevel, int level, int depth) {
+        boolean any = false;
+        if (node.roots > 0) {
+            node.shared = node.roots > 1 || rootLevel >= 0 && level - rootLevel <= depth;
+            any = node.shared;
+            rootLevel = level;
+        }
+        for (Node child : node.children.values()) {
+            any |= mark(child, rootLevel, level + 1, depth);
+        }
+        return any;
+    }
+
+    // paths with ".." are never shared: normalizing them could jump over a symbolic link
+    private static Path key(Path path) {
+        Path absolute = path.toAbsolutePath();
+        for (Path name : absolute) {
+            if (name.toString().equals("..")) {
+                return null;
+            }
+        }
+        return absolute.normalize();
+    }
+
+    private Node insert(Path key) {
+        Node node = top.children.computeIfAbsent(key.getRoot(), root -> new Node());
+        for (Path name : key) {
+            node = node.children.computeIfAbsent(name, child -> new Node());
+        }
+        return node;
+    }
+
+    /**
+     * Key of the remembered hash of the file, {@code null} if the file is under no shared root.
+     */
+    Path sharedKey(Path filepath) {
+        Path key = key(filepath);
+        if (key == null) {
+            return null;
+        }
+        Node node = top.children.get(key.getRoot());
+        if (node != null && node.shared) {
+            return key;
+        }
+        for (Path name : key) {
+            if (node == null) {
+                return null;
+            }
+            node = node.children.get(name);
+            if (node != null && node.shared) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    Long known(Path key) {
+        Remembered remembered = hashes.get(key);
+        if (remembered == null) {
+            return null;
+        }
+        if (remembered.uses().decrementAndGet() <= 0) {
+            hashes.remove(key, remembered);
+        }
+        return remembered.hash();
+    }
+
+    void remember(Path key, long hash) {
+        int uses = covering(key) - 1;
+        if (uses > 0) {
+            Remembered remembered = hashes.putIfAbsent(key, new Remembered(hash, new AtomicInteger(uses)));
+            if (remembered != null && remembered.uses().decrementAndGet() <= 0) {
+                // another root hashed the file meanwhile
+                hashes.remove(key, remembered);
+            }
+        }
+    }
+
+    // number of roots the walk reaches the file from
+    private int covering(Path key) {
+        Node node = top.children.get(key.getRoot());
+        int below = key.getNameCount();
+        int count = 0;
+        for (Path name : key) {
+            if (node == null) {
+                return count;
+            }
+            if (below <= depth) {
+                count += node.roots;
+            }
+            node = node.children.get(name);
+            below--;
+        }
+        return node == null ? count : count + node.roots;
+    }
+}
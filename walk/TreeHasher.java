@@ -0,0 +1,122 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Merkle-style hash of a file: fixed-size chunks are hashed in parallel through positional reads,
+ * then adjacent digests are combined pairwise up to the root.
+ * A file of a single chunk hashes exactly as in the flat mode.
+ * Without parallel leaves, chunks are hashed one by one in the calling thread, so the walk bounds the reads.
+ * Hash states and read buffers are reused through a pool, which never holds more of them than leaves hashed at once.
+ */
+class TreeHasher {
+    private static final int READ_SIZE = 1 << 18;
+    private static final byte NODE_TAG = 1;
+
+    private final HashFunction function;
+    private final long chunkSize;
+    private final boolean parallel;
+    private final Queue<Reader> readers = new ConcurrentLinkedQueue<>();
+
+    private record Reader(HashFunction.State state, ByteBuffer buffer) {
+    }
+
+    TreeHasher(HashFunction function, long chunkSize, boolean parallel) {
+        this.function = function;
+        this.chunkSize = chunkSize;
+        this.parallel = parallel;
+    }
+
+    long chunkSize() {
+        return chunkSize;
+    }
+
+    long hash(FileChannel channel, long size) throws IOException {
+        return combine(leaves(channel, size));
+    }
+
+    long[] leaves(FileChannel channel, long size) throws IOException {
+        long[] leaves = new long[Math.max(1, leafCount(size))];
+        IntStream range = IntStream.range(0, leaves.length);
+        range = parallel ? range.parallel() : range;
+        try {
+            range.forEach(i -> {
+                try {
+                    leaves[i] = leaf(channel, size, i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return leaves;
+    }
+
+    // leaves of a file are kept in one array, so a chunk size too small for the file is an error of the file
+    int leafCount(long size) throws IOException {
+        long count = size / chunkSize + (size % chunkSize == 0 ? 0 : 1);
+        if (count > Integer.MAX_VALUE) {
+            throw new IOException("file of " + size + " bytes has too many tree chunks of " + chunkSize + " bytes");
+        }
+        return (int) count;
+    }
+
+    long leaf(FileChannel channel, long size, int index) throws IOException {
+        Reader reader = readers.poll();
+        if (reader == null) {
+            reader = new Reader(function.newState(), ByteBuffer.allocateDirect(READ_SIZE));
+        }
+        try {
+            HashFunction.State state = reader.state();
+            ByteBuffer buffer = reader.buffer();
+            state.reset();
+            long position = index * chunkSize;
+            long end = Math.min(size, position + chunkSize);
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("file was truncated while hashing");
+                }
+                buffer.flip();
+                state.update(buffer);
+                position += read;
+            }
+            return state.digest();
+        } finally {
+            readers.offer(reader);
+        }
+    }
+
+    long combine(long[] leaves) {
+        HashFunction.State state = function.newState();
+        ByteBuffer node = ByteBuffer.allocate(1 + 2 * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        long[] level = leaves.clone();
+        int length = level.length;
+        while (length > 1) {
+            int next = 0;
+            for (int i = 0; i < length; i += 2) {
+                if (i + 1 == length) {
+                    level[next++] = level[i];
+                    continue;
+                }
+                node.clear();
+                node.put(NODE_TAG).putLong(level[i]).putLong(level[i + 1]).flip();
+                state.reset();
+                state.update(node);
+                level[next++] = state.digest();
+            }
+            length = next;
+        }
+        return level[0];
+    }
+}
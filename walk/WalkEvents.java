@@ -0,0 +1,85 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder events of the walk, enabled with {@code -XX:StartFlightRecording}.
+ */
+final class WalkEvents {
+    private WalkEvents() {
+    }
+
+    @Name("info.kgeorgiy.ja.denisov.walk.FileHash")
+    @Label("File Hash")
+    @Category("Walk")
+    @Description("Open and hash of one file")
+    @StackTrace(false)
+    static class FileHash extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Open Time")
+        @Timespan
+        long openTime;
+    }
+
+    @Name("info.kgeorgiy.ja.denisov.walk.DirectoryList")
+    @Label("Directory List")
+    @Category("Walk")
+    @Description("Listing of one directory, self time excludes hashing of its files and subdirectories")
+    @StackTrace(false)
+    static class DirectoryList extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Entries")
+        int entries;
+
+        @Label("Self Time")
+        @Timespan
+        long selfTime;
+    }
+
+    @Name("info.kgeorgiy.ja.denisov.walk.OutputWrite")
+    @Label("Output Write")
+    @Category("Walk")
+    @StackTrace(false)
+    static class OutputWrite extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("info.kgeorgiy.ja.denisov.walk.WalkSummary")
+    @Label("Walk Summary")
+    @Category("Walk")
+    @StackTrace(false)
+    static class WalkSummary extends Event {
+        @Label("Walker")
+        String walker;
+
+        @Label("Files")
+        long files;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Directories")
+        long directories;
+
+        @Label("Failures")
+        long failures;
+    }
+}
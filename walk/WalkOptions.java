@@ -0,0 +1,262 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.List;
+
+public class WalkOptions {
+    private static final int DEFAULT_VIRTUAL_THREADS = 256;
+
+    private int threads = 1;
+    private int virtualThreads;
+    private Path cache;
+    private HashFunction hash = new JenkinsHash();
+    private long treeChunk;
+    private int bufferSize = FileHasher.BUFFER_SIZE;
+    private boolean asyncOutput;
+    private boolean directIo;
+    private boolean binary;
+    private boolean duplicates;
+    private boolean watch;
+    private boolean stats;
+    private Path statsPath;
+
+    public int threads() {
+        return threads;
+    }
+
+    public WalkOptions threads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("number of threads must be positive");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public int virtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Walks on virtual threads with at most {@code virtualThreads} of them listing or hashing at once,
+     * zero disables virtual threads.
+     */
+    public WalkOptions virtualThreads(int virtualThreads) {
+        if (virtualThreads < 0) {
+            throw new IllegalArgumentException("number of virtual threads can't be negative");
+        }
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public Path cache() {
+        return cache;
+    }
+
+    public WalkOptions cache(Path cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    public HashFunction hash() {
+        return hash;
+    }
+
+    public WalkOptions hash(HashFunction hash) {
+        this.hash = hash;
+        return this;
+    }
+
+    public long treeChunk() {
+        return treeChunk;
+    }
+
+    /**
+     * Enables tree hashing of files larger than {@code treeChunk} bytes, zero disables it.
+     */
+    public WalkOptions treeChunk(long treeChunk) {
+        if (treeChunk < 0) {
+            throw new IllegalArgumentException("tree chunk size can't be negative");
+        }
+        this.treeChunk = treeChunk;
+        return this;
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Size of the heap buffer used to read files smaller than the direct buffer threshold.
+     */
+    public WalkOptions bufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public boolean asyncOutput() {
+        return asyncOutput;
+    }
+
+    public WalkOptions asyncOutput(boolean asyncOutput) {
+        this.asyncOutput = asyncOutput;
+        return this;
+    }
+
+    public boolean directIo() {
+        return directIo;
+    }
+
+    /**
+     * Reads files bypassing the page cache where the filesystem allows it.
+     */
+    public WalkOptions directIo(boolean directIo) {
+        this.directIo = directIo;
+        return this;
+    }
+
+    public boolean binary() {
+        return binary;
+    }
+
+    /**
+     * Writes sorted binary manifest, see {@link ManifestWriter}, instead of the text output.
+     */
+    public WalkOptions binary(boolean binary) {
+        this.binary = binary;
+        return this;
+    }
+
+    public boolean duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Writes groups of files with equal content, separated by empty lines, instead of every file hash.
+     */
+    public WalkOptions duplicates(boolean duplicates) {
+        this.duplicates = duplicates;
+        return this;
+    }
+
+    public boolean watch() {
+        return watch;
+    }
+
+    /**
+     * Keeps running after the walk and updates the output whenever walked files change.
+     */
+    public WalkOptions watch(boolean watch) {
+        this.watch = watch;
+        return this;
+    }
+
+    public boolean stats() {
+        return stats;
+    }
+
+    public Path statsPath() {
+        return statsPath;
+    }
+
+    /**
+     * Writes JSON summary of the walk to {@code statsPath}, or to standard output if it is {@code null}.
+     */
+    public WalkOptions stats(boolean stats, Path statsPath) {
+        this.stats = stats;
+        this.statsPath = statsPath;
+        return this;
+    }
+
+    public boolean isParallel() {
+        return threads > 1;
+    }
+
+    String hashId() {
+        return treeChunk == 0 ? hash.name() : hash.name() + "-tree-" + treeChunk;
+    }
+
+    // on virtual threads the I/O permits bound the reads, so leaves are not forked into a pool
+    TreeHasher newTreeHasher() {
+        return treeChunk == 0 ? null : new TreeHasher(hash, treeChunk, virtualThreads == 0);
+    }
+
+    FileHasher newHasher(TreeHasher treeHasher, WalkStats stats) {
+        return new FileHasher(hash, treeHasher, stats,
+                bufferSize, FileHasher.DIRECT_THRESHOLD, FileHasher.MAPPED_THRESHOLD, directIo);
+    }
+
+    static WalkOptions parse(List<String> options) {
+        WalkOptions result = new WalkOptions();
+        for (String option : options) {
+            int separator = option.indexOf('=');
+            String name = separator < 0 ? option : option.substring(0, separator);
+            String value = separator < 0 ? null : option.substring(separator + 1);
+            switch (name) {
+                case "--threads" -> result.threads(value == null
+                        ? Runtime.getRuntime().availableProcessors()
+                        : parseInt(name, value));
+                case "--virtual-threads" -> result.virtualThreads(value == null
+                        ? DEFAULT_VIRTUAL_THREADS
+                        : parseInt(name, value));
+                case "--cache" -> result.cache(parsePath(name, value));
+                case "--hash" -> result.hash(HashFunction.forName(requireValue(name, value)));
+                case "--tree-chunk" -> result.treeChunk(parseSize(name, value));
+                case "--buffer-size" -> result.bufferSize((int) Math.min(Integer.MAX_VALUE, parseSize(name, value)));
+                case "--async-output" -> result.asyncOutput(true);
+                case "--direct-io" -> result.directIo(true);
+                case "--duplicates" -> result.duplicates(true);
+                case "--binary" -> result.binary(true);
+                case "--watch" -> result.watch(true);
+                case "--stats" -> result.stats(true, value == null ? null : parsePath(name, value));
+                default -> throw new IllegalArgumentException("unknown option " + option);
+            }
+        }
+        if (result.binary && result.duplicates) {
+            throw new IllegalArgumentException("duplicate groups can't be written as binary manifest");
+        }
+        return result;
+    }
+
+    private static String requireValue(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(name + " expects a value");
+        }
+        return value;
+    }
+
+    private static Path parsePath(String name, String value) {
+        try {
+            return Path.of(requireValue(name, value));
+        } catch (InvalidPathException e) {
+            throw new IllegalArgumentException(name + " got invalid path " + value);
+        }
+    }
+
+    private static long parseSize(String name, String value) {
+        value = requireValue(name, value);
+        int shift = switch (Character.toUpperCase(value.charAt(value.length() - 1))) {
+            case 'K' -> 10;
+            case 'M' -> 20;
+            case 'G' -> 30;
+            default -> 0;
+        };
+        String number = shift == 0 ? value : value.substring(0, value.length() - 1);
+        try {
+            return Math.multiplyExact(Long.parseLong(number), 1L << shift);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException(name + " expects a size like 64M, got " + value);
+        }
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " expects an integer, got " + value);
+        }
+    }
+}
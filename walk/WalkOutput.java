@@ -0,0 +1,23 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Destination of {@code <hash> <path>} results of a walk.
+ */
+interface WalkOutput extends Closeable {
+    void write(long hash, String path) throws IOException;
+
+    /**
+     * Opens text output or, with {@link WalkOptions#binary()}, binary manifest.
+     */
+    static WalkOutput open(Path path, WalkOptions options, WalkStats stats) throws IOException {
+        if (options.binary()) {
+            return new ManifestBuilder(path, options.hashId(), options.hash().width());
+        }
+        return new WalkWriter(Files.newOutputStream(path), options.hash().width(), options.asyncOutput(), stats);
+    }
+}
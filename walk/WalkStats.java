@@ -0,0 +1,182 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-phase counters and latency histograms of a walk, safe to update from many threads.
+ */
+class WalkStats {
+    private static final int SLOWEST_DIRECTORIES = 10;
+
+    /**
+     * Latency histogram with power-of-two buckets of nanoseconds.
+     */
+    static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos) - (nanos == 0 ? 0 : 1));
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        long total() {
+            return total.sum();
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile.
+         */
+        long quantile(double quantile) {
+            long rank = (long) Math.ceil(count() * quantile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(max.get(), i >= Long.SIZE - 2 ? Long.MAX_VALUE : (2L << i) - 1);
+                }
+            }
+            return 0;
+        }
+
+        private void appendJson(StringBuilder json) {
+            json.append("{\"count\": ").append(count())
+                    .append(", \"totalNanos\": ").append(total())
+                    .append(", \"p50Nanos\": ").append(quantile(0.5))
+                    .append(", \"p90Nanos\": ").append(quantile(0.9))
+                    .append(", \"p99Nanos\": ").append(quantile(0.99))
+                    .append(", \"maxNanos\": ").append(max.get())
+                    .append('}');
+        }
+    }
+
+    private record DirectoryTime(String path, long nanos, int entries) {
+    }
+
+    final Histogram open = new Histogram();
+    final Histogram hash = new Histogram();
+    final Histogram list = new Histogram();
+    final Histogram write = new Histogram();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final PriorityQueue<DirectoryTime> slowest = new PriorityQueue<>(Comparator.comparingLong(DirectoryTime::nanos));
+    private final long start = System.nanoTime();
+
+    void fileHashed(long openNanos, long hashNanos, long size) {
+        files.increment();
+        bytes.add(size);
+        open.record(openNanos);
+        hash.record(hashNanos);
+    }
+
+    void directoryListed(Path directory, long nanos, int entries) {
+        directories.increment();
+        list.record(nanos);
+        synchronized (slowest) {
+            if (slowest.size() < SLOWEST_DIRECTORIES || slowest.peek().nanos() < nanos) {
+                slowest.add(new DirectoryTime(directory.toString(), nanos, entries));
+                if (slowest.size() > SLOWEST_DIRECTORIES) {
+                    slowest.poll();
+                }
+            }
+        }
+    }
+
+    void failed() {
+        failures.increment();
+    }
+
+    void written(long nanos, long size) {
+        write.record(nanos);
+        written.add(size);
+    }
+
+    void commitSummary(String walker) {
+        WalkEvents.WalkSummary event = new WalkEvents.WalkSummary();
+        if (event.shouldCommit()) {
+            event.walker = walker;
+            event.files = files.sum();
+            event.bytes = bytes.sum();
+            event.directories = directories.sum();
+            event.failures = failures.sum();
+            event.commit();
+        }
+    }
+
+    String summary(String walker) {
+        long elapsed = System.nanoTime() - start;
+        double seconds = Math.max(elapsed, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        List<DirectoryTime> directoryTimes;
+        synchronized (slowest) {
+            directoryTimes = new ArrayList<>(slowest);
+        }
+        directoryTimes.sort(Comparator.comparingLong(DirectoryTime::nanos).reversed());
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"walker\": ").append(quote(walker))
+                .append(",\n  \"elapsedNanos\": ").append(elapsed)
+                .append(",\n  \"files\": ").append(files.sum())
+                .append(",\n  \"bytes\": ").append(bytes.sum())
+                .append(",\n  \"directories\": ").append(directories.sum())
+                .append(",\n  \"failures\": ").append(failures.sum())
+                .append(",\n  \"outputBytes\": ").append(written.sum())
+                .append(",\n  \"filesPerSecond\": ").append(String.format(Locale.ROOT, "%.1f", files.sum() / seconds))
+                .append(",\n  \"bytesPerSecond\": ").append(String.format(Locale.ROOT, "%.1f", bytes.sum() / seconds))
+                .append(",\n  \"phases\": {");
+        String[] names = {"open", "hash", "list", "write"};
+        Histogram[] histograms = {open, hash, list, write};
+        for (int i = 0; i < names.length; i++) {
+            json.append(i == 0 ? "\n    " : ",\n    ").append(quote(names[i])).append(": ");
+            histograms[i].appendJson(json);
+        }
+        json.append("\n  },\n  \"slowestDirectories\": [");
+        for (int i = 0; i < directoryTimes.size(); i++) {
+            DirectoryTime directory = directoryTimes.get(i);
+            json.append(i == 0 ? "\n    " : ",\n    ")
+                    .append("{\"path\": ").append(quote(directory.path()))
+                    .append(", \"nanos\": ").append(directory.nanos())
+                    .append(", \"entries\": ").append(directory.entries())
+                    .append('}');
+        }
+        json.append(directoryTimes.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -1,65 +1,129 @@
 package info.kgeorgiy.ja.denisov.walk;
 
 
-import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.FileVisitResult;
 import java.nio.file.attribute.BasicFileAttributes;
 
 public class WalkVisitor extends SimpleFileVisitor<Path> {
-    private final BufferedWriter writer;
-    private final static int BUFFER_SIZE = 1 << 12;
-    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final WalkOutput writer;
+    private final FileHasher hasher;
+    private final HashCache cache;
+    private final WalkStats stats;
+    private final RootTree roots;
+    private final Deque<DirectoryFrame> directories = new ArrayDeque<>();
 
-    WalkVisitor(BufferedWriter writer) {
+    // time spent in a directory minus its children approximates listing time of the sequential walk
+    private static class DirectoryFrame {
+        private final WalkEvents.DirectoryList event = new WalkEvents.DirectoryList();
+        private final long start = System.nanoTime();
+        private long children;
+        private int entries;
+    }
+
+    WalkVisitor(WalkOutput writer) {
+        this(writer, new WalkOptions(), null, new WalkStats(), null);
+    }
+
+    WalkVisitor(WalkOutput writer, WalkOptions options, HashCache cache, WalkStats stats, RootTree roots) {
         this.writer = writer;
+        this.hasher = options.newHasher(options.newTreeHasher(), stats);
+        this.cache = cache;
+        this.stats = stats;
+        this.roots = roots;
+    }
+
+    static long hash(Path filepath, BasicFileAttributes attrs, FileHasher hasher, HashCache cache, RootTree roots)
+            throws IOException {
+        Path key = roots == null ? null : roots.sharedKey(filepath);
+        if (key != null) {
+            Long known = roots.known(key);
+            if (known != null) {
+                return known;
+            }
+        }
+        long hash = cache == null ? hasher.hash(filepath) : cache.hash(filepath, attrs, hasher);
+        if (key != null) {
+            roots.remember(key, hash);
+        }
+        return hash;
     }
 
     void writeInvalidPath(Path filepath, Exception e) throws IOException {
-        writeInvalidPath(filepath.toString(), e);
+        stats.failed();
+        write(filepath, 0);
+        System.err.println(e.getMessage());
     }
 
     void writeInvalidPath(String filepath, Exception e) throws IOException {
+        stats.failed();
         write(filepath, 0);
         System.err.println(e.getMessage());
     }
 
-    private void write(String filepath, int hash) throws IOException {
-        writer.write(String.format("%08x %s%n", hash, filepath));
+    void write(Path filepath, long hash) throws IOException {
+        write(filepath.toString(), hash);
+    }
+
+    private void write(String filepath, long hash) throws IOException {
+        writer.write(hash, filepath);
     }
 
     @Override
-    public FileVisitResult visitFile(Path filepath, BasicFileAttributes attrs) throws IOException {
-        try (InputStream inputStream = Files.newInputStream(filepath)) {
-            int hash = 0;
-            int size;
-            while ((size = inputStream.read(buffer)) > 0) {
-                for (int i = 0; i < size; i++) {
-                    hash += buffer[i] & 0xff;
-                    hash += hash << 10;
-                    hash ^= hash >>> 6;
-                }
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        DirectoryFrame frame = new DirectoryFrame();
+        frame.event.begin();
+        directories.push(frame);
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+        DirectoryFrame frame = directories.poll();
+        if (frame != null) {
+            long total = System.nanoTime() - frame.start;
+            long self = total - frame.children;
+            stats.directoryListed(dir, self, frame.entries);
+            if (frame.event.shouldCommit()) {
+                frame.event.path = dir.toString();
+                frame.event.entries = frame.entries;
+                frame.event.selfTime = self;
+                frame.event.commit();
             }
-            hash += hash << 3;
-            hash ^= hash >>> 11;
-            hash += hash << 15;
+            countChild(total);
+        }
+        return super.postVisitDirectory(dir, e);
+    }
+
+    private void countChild(long nanos) {
+        DirectoryFrame parent = directories.peek();
+        if (parent != null) {
+            parent.children += nanos;
+            parent.entries++;
+        }
+    }
 
-            write(filepath.toString(), hash);
+    @Override
+    public FileVisitResult visitFile(Path filepath, BasicFileAttributes attrs) throws IOException {
+        long start = System.nanoTime();
+        try {
+            write(filepath, hash(filepath, attrs, hasher, cache, roots));
         } catch (IOException e) {
             writeInvalidPath(filepath, e);
             System.err.println(e.getMessage());
         }
+        countChild(System.nanoTime() - start);
         return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFileFailed(Path filepath, IOException e) throws IOException {
+        countChild(0);
         writeInvalidPath(filepath, e);
         return FileVisitResult.CONTINUE;
     }
-}
\ No newline at end of file
+}
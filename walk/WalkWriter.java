@@ -0,0 +1,190 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes {@code <hex hash> <path>} lines encoding them straight into a reusable byte buffer.
+ * Full buffers are written in one call, optionally by a background thread so that hashing
+ * never waits for the output file.
+ */
+class WalkWriter implements WalkOutput {
+    static final int BATCH_SIZE = 1 << 20;
+    private static final int ASYNC_BATCHES = 4;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final Batch END = new Batch(0);
+
+    private static class Batch {
+        private final byte[] data;
+        private int length;
+
+        private Batch(int capacity) {
+            data = new byte[capacity];
+        }
+    }
+
+    private final OutputStream output;
+    private final int width;
+    private final WalkStats stats;
+    private final BlockingQueue<Batch> filled;
+    private final BlockingQueue<Batch> free;
+    private final Thread writerThread;
+    private volatile IOException writerFailure;
+    private Batch batch = new Batch(BATCH_SIZE);
+
+    WalkWriter(OutputStream output, int width, boolean async) {
+        this(output, width, async, null);
+    }
+
+    WalkWriter(OutputStream output, int width, boolean async, WalkStats stats) {
+        this.output = output;
+        this.width = width;
+        this.stats = stats;
+        if (async) {
+            filled = new ArrayBlockingQueue<>(ASYNC_BATCHES);
+            free = new ArrayBlockingQueue<>(ASYNC_BATCHES);
+            for (int i = 1; i < ASYNC_BATCHES; i++) {
+                free.add(new Batch(BATCH_SIZE));
+            }
+            writerThread = new Thread(this::drain, "walk-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        } else {
+            filled = null;
+            free = null;
+            writerThread = null;
+        }
+    }
+
+    @Override
+    public void write(long hash, String path) throws IOException {
+        ensure(width + 1);
+        byte[] data = batch.data;
+        int position = batch.length;
+        for (int i = position + width - 1; i >= position; i--) {
+            data[i] = HEX[(int) hash & 0xf];
+            hash >>>= 4;
+        }
+        data[position + width] = ' ';
+        batch.length = position + width + 1;
+        writePath(path);
+        newLine();
+    }
+
+    void newLine() throws IOException {
+        put(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+    }
+
+    private void writePath(String path) throws IOException {
+        int length = path.length();
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            if (c >= 0x80) {
+                byte[] rest = path.substring(i).getBytes(StandardCharsets.UTF_8);
+                put(rest, 0, rest.length);
+                return;
+            }
+            ensure(1);
+            batch.data[batch.length++] = (byte) c;
+        }
+    }
+
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int count = Math.min(length, batch.data.length - batch.length);
+            System.arraycopy(bytes, offset, batch.data, batch.length, count);
+            batch.length += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (batch.data.length - batch.length < bytes) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        if (writerThread == null) {
+            writeBatch(batch);
+            batch.length = 0;
+            return;
+        }
+        checkWriter();
+        try {
+            filled.put(batch);
+            batch = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for output writer");
+        }
+        batch.length = 0;
+    }
+
+    private void writeBatch(Batch batch) throws IOException {
+        WalkEvents.OutputWrite event = new WalkEvents.OutputWrite();
+        event.begin();
+        long start = System.nanoTime();
+        output.write(batch.data, 0, batch.length);
+        if (stats != null) {
+            stats.written(System.nanoTime() - start, batch.length);
+        }
+        if (event.shouldCommit()) {
+            event.bytes = batch.length;
+            event.commit();
+        }
+    }
+
+    private void drain() {
+        try {
+            Batch next;
+            while ((next = filled.take()) != END) {
+                if (writerFailure == null) {
+                    try {
+                        writeBatch(next);
+                    } catch (IOException e) {
+                        writerFailure = e;
+                    }
+                }
+                free.put(next);
+            }
+        } catch (InterruptedException ignored) {
+            // closed without END, nothing more to write
+        }
+    }
+
+    private void checkWriter() throws IOException {
+        if (writerFailure != null) {
+            throw writerFailure;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (batch.length > 0) {
+                flushBatch();
+            }
+            if (writerThread != null) {
+                try {
+                    filled.put(END);
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    writerThread.interrupt();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for output writer");
+                }
+                checkWriter();
+            }
+        } finally {
+            output.close();
+        }
+    }
+}
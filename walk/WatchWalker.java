@@ -0,0 +1,268 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the output manifest up to date: after the initial walk every walked directory is watched,
+ * and bursts of events are coalesced into one update that rehashes only the affected files and subtrees.
+ * Modified files keep their lines, new files are appended to the lines of their root.
+ */
+class WatchWalker implements AutoCloseable {
+    private static final long QUIET_PERIOD = 200;
+    private static final long MAX_DELAY = 2000;
+
+    // path is absolute and normalized like every path watched, entries are printed relative to the line
+    private record Root(String line, Path path, Map<Path, Long> entries) {
+        boolean covers(Path filepath, int depth) {
+            if (path == null || !filepath.startsWith(path)) {
+                return false;
+            }
+            return filepath.equals(path) || path.relativize(filepath).getNameCount() <= depth;
+        }
+
+        int depthOf(Path filepath) {
+            return filepath.equals(path) ? 0 : path.relativize(filepath).getNameCount();
+        }
+
+        String display(Path filepath) {
+            return Paths.get(line).resolve(path.relativize(filepath)).toString();
+        }
+    }
+
+    private final int depth;
+    private final WalkOptions options;
+    private final HashCache cache;
+    private final WalkStats stats;
+    private final Path outputPath;
+    private final Path outputTemp;
+    private final Path cacheTemp;
+    private final Set<Path> ownFiles = new HashSet<>();
+    private final String walkerName;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final List<Root> roots = new ArrayList<>();
+
+    WatchWalker(int depth, WalkOptions options, HashCache cache, WalkStats stats,
+                Path outputPath, String walkerName) throws IOException {
+        this.depth = depth;
+        this.options = options;
+        this.cache = cache;
+        this.stats = stats;
+        this.outputPath = outputPath;
+        this.walkerName = walkerName;
+        this.outputTemp = temp(outputPath);
+        this.cacheTemp = options.cache() == null ? null : temp(options.cache());
+        ownFiles.add(absolute(outputPath));
+        ownFiles.add(outputTemp);
+        if (cacheTemp != null) {
+            ownFiles.add(absolute(options.cache()));
+            ownFiles.add(cacheTemp);
+        }
+        Path watched = outputPath.toAbsolutePath().getParent();
+        this.watcher = (watched == null ? outputPath.toAbsolutePath() : watched).getFileSystem().newWatchService();
+    }
+
+    void add(String line) throws IOException {
+        Path path;
+        try {
+            path = Paths.get(line);
+        } catch (InvalidPathException e) {
+            System.err.println(e.getMessage());
+            roots.add(new Root(line, null, Map.of()));
+            return;
+        }
+        path = absolute(path);
+        Root root = new Root(line, path, new LinkedHashMap<>());
+        roots.add(root);
+        if (depth == 0 || !Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            Path parent = path.getParent();
+            if (parent != null && Files.isDirectory(parent)) {
+                register(parent);
+            }
+        }
+        walk(root, path);
+    }
+
+    void run() throws IOException, InterruptedException {
+        writeManifest();
+        try {
+            while (true) {
+                Set<Path> changed = new HashSet<>();
+                boolean overflow = poll(watcher.take(), changed);
+                long deadline = System.currentTimeMillis() + MAX_DELAY;
+                WatchKey key;
+                while (System.currentTimeMillis() < deadline
+                        && (key = watcher.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= poll(key, changed);
+                }
+                if (overflow) {
+                    rescan();
+                } else if (changed.isEmpty()) {
+                    continue;
+                } else {
+                    update(changed);
+                }
+                writeManifest();
+                System.out.println(walkerName + ": updated " + (overflow ? "all" : changed.size()) + " paths");
+            }
+        } catch (ClosedWatchServiceException ignored) {
+            // closed from another thread, stop watching
+        }
+    }
+
+    private boolean poll(WatchKey key, Set<Path> changed) {
+        Path directory = keys.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (directory != null) {
+                Path filepath = directory.resolve((Path) event.context());
+                if (!ownFiles.contains(filepath)) {
+                    changed.add(filepath);
+                }
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        return overflow;
+    }
+
+    private static Path absolute(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    // fixed names, so rewriting the manifest or the cache inside a watched tree does not trigger another update
+    private static Path temp(Path path) {
+        Path absolute = absolute(path);
+        return absolute.resolveSibling(absolute.getFileName() + ".tmp");
+    }
+
+    private void update(Set<Path> changed) throws IOException {
+        for (Path filepath : changed) {
+            if (hasChangedAncestor(filepath, changed)) {
+                continue;
+            }
+            for (Root root : roots) {
+                if (root.covers(filepath, depth)) {
+                    update(root, filepath);
+                }
+            }
+        }
+    }
+
+    private static boolean hasChangedAncestor(Path filepath, Set<Path> changed) {
+        for (Path parent = filepath.getParent(); parent != null; parent = parent.getParent()) {
+            if (changed.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void update(Root root, Path filepath) throws IOException {
+        if (root.entries.containsKey(filepath) && Files.isRegularFile(filepath, LinkOption.NOFOLLOW_LINKS)) {
+            // modified in place, keep the line where it was
+            walk(root, filepath);
+            return;
+        }
+        Iterator<Path> iterator = root.entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(filepath)) {
+                iterator.remove();
+            }
+        }
+        if (filepath.equals(root.path) || Files.exists(filepath, LinkOption.NOFOLLOW_LINKS)) {
+            walk(root, filepath);
+        }
+    }
+
+    private void rescan() throws IOException {
+        for (Root root : roots) {
+            if (root.path != null) {
+                root.entries.clear();
+                walk(root, root.path);
+            }
+        }
+    }
+
+    private void walk(Root root, Path start) throws IOException {
+        Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), depth - root.depthOf(start), new WalkVisitor(null, options, cache, stats, null) {
+            @Override
+            void write(Path filepath, long hash) {
+                root.entries.put(filepath, hash);
+            }
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir);
+                return super.preVisitDirectory(dir, attrs);
+            }
+        });
+    }
+
+    private void register(Path directory) throws IOException {
+        WatchKey key = directory.register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        keys.put(key, directory);
+    }
+
+    private void writeManifest() throws IOException {
+        Path temp = outputTemp;
+        try {
+            try (WalkOutput writer = WalkOutput.open(temp, options, null)) {
+                for (Root root : roots) {
+                    if (root.path == null) {
+                        writer.write(0, root.line);
+                    }
+                    for (Map.Entry<Path, Long> entry : root.entries.entrySet()) {
+                        writer.write(entry.getValue(), root.display(entry.getKey()));
+                    }
+                }
+            }
+            try {
+                Files.move(temp, outputPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, outputPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (cache != null) {
+            cache.save(cacheTemp);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+}
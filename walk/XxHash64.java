@@ -0,0 +1,144 @@
+package info.kgeorgiy.ja.denisov.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64 with zero seed, consuming input in 32-byte stripes of four little-endian words.
+ */
+class XxHash64 implements HashFunction {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+
+    @Override
+    public String name() {
+        return "xxhash64";
+    }
+
+    @Override
+    public int width() {
+        return 16;
+    }
+
+    @Override
+    public State newState() {
+        return new XxState();
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    private static class XxState implements State {
+        private final ByteBuffer tail = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+        private long total;
+
+        private XxState() {
+            reset();
+        }
+
+        @Override
+        public void reset() {
+            v1 = PRIME1 + PRIME2;
+            v2 = PRIME2;
+            v3 = 0;
+            v4 = -PRIME1;
+            total = 0;
+            tail.clear();
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            total += buffer.remaining();
+            if (tail.position() > 0) {
+                while (tail.hasRemaining() && buffer.hasRemaining()) {
+                    tail.put(buffer.get());
+                }
+                if (tail.hasRemaining()) {
+                    return;
+                }
+                stripes(tail, 0, STRIPE);
+                tail.clear();
+            }
+
+            ByteOrder order = buffer.order();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int start = buffer.position();
+            int end = start + (buffer.remaining() & -STRIPE);
+            stripes(buffer, start, end);
+            buffer.position(end);
+            buffer.order(order);
+            tail.put(buffer);
+        }
+
+        private void stripes(ByteBuffer buffer, int start, int end) {
+            long v1 = this.v1;
+            long v2 = this.v2;
+            long v3 = this.v3;
+            long v4 = this.v4;
+            for (int i = start; i < end; i += STRIPE) {
+                v1 = round(v1, buffer.getLong(i));
+                v2 = round(v2, buffer.getLong(i + 8));
+                v3 = round(v3, buffer.getLong(i + 16));
+                v4 = round(v4, buffer.getLong(i + 24));
+            }
+            this.v1 = v1;
+            this.v2 = v2;
+            this.v3 = v3;
+            this.v4 = v4;
+        }
+
+        @Override
+        public long digest() {
+            long hash;
+            if (total >= STRIPE) {
+                hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                hash = mergeRound(hash, v1);
+                hash = mergeRound(hash, v2);
+                hash = mergeRound(hash, v3);
+                hash = mergeRound(hash, v4);
+            } else {
+                hash = PRIME5;
+            }
+            hash += total;
+
+            int length = tail.position();
+            int i = 0;
+            for (; i + 8 <= length; i += 8) {
+                hash ^= round(0, tail.getLong(i));
+                hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            }
+            if (i + 4 <= length) {
+                hash ^= (tail.getInt(i) & 0xffffffffL) * PRIME1;
+                hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+                i += 4;
+            }
+            for (; i < length; i++) {
+                hash ^= (tail.get(i) & 0xffL) * PRIME5;
+                hash = Long.rotateLeft(hash, 11) * PRIME1;
+            }
+
+            hash ^= hash >>> 33;
+            hash *= PRIME2;
+            hash ^= hash >>> 29;
+            hash *= PRIME3;
+            hash ^= hash >>> 32;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package info.kgeorgiy.ja.denisov.walk.bench;
+
+import info.kgeorgiy.ja.denisov.walk.HashFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hash loop alone, without any I/O: one buffer per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashKernelBenchmark {
+    @Param({"jenkins", "crc32c", "xxhash64"})
+    public String algorithm;
+
+    @Param({"4096", "65536", "1048576"})
+    public int bufferSize;
+
+    @Param({"heap", "direct"})
+    public String memory;
+
+    private HashFunction.State state;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        state = HashFunction.forName(algorithm).newState();
+        byte[] data = new byte[bufferSize];
+        new SplittableRandom(42).nextBytes(data);
+        buffer = "direct".equals(memory) ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        buffer.put(data);
+    }
+
+    @Benchmark
+    public long update() {
+        buffer.clear();
+        state.reset();
+        state.update(buffer);
+        return state.digest();
+    }
+}
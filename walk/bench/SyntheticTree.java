@@ -0,0 +1,123 @@
+package info.kgeorgiy.ja.denisov.walk.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Reproducible file tree for the walk benchmarks, preferably created on tmpfs
+ * so that the benchmarks measure the walk rather than the disk.
+ */
+class SyntheticTree {
+    private final Path base;
+    private final Path root;
+    private final List<Path> files = new ArrayList<>();
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private SyntheticTree(Path base) {
+        this.base = base;
+        this.root = base.resolve("tree");
+    }
+
+    /**
+     * Shapes:
+     * <ul>
+     *     <li>{@code tiny} - 100 directories of 200 files up to 512 bytes</li>
+     *     <li>{@code huge} - 4 files of 128 MiB</li>
+     *     <li>{@code deep} - chain of 64 directories with 16 files of 4 KiB on every level</li>
+     *     <li>{@code wide} - one directory of 50000 files of 1 KiB</li>
+     * </ul>
+     */
+    static SyntheticTree create(Path parent, String shape) throws IOException {
+        Path base = Files.isDirectory(parent)
+                ? Files.createTempDirectory(parent, "walk-bench")
+                : Files.createTempDirectory("walk-bench");
+        SyntheticTree tree = new SyntheticTree(base);
+        Files.createDirectories(tree.root);
+        switch (shape) {
+            case "tiny" -> {
+                for (int i = 0; i < 100; i++) {
+                    Path directory = Files.createDirectory(tree.root.resolve("d" + i));
+                    for (int j = 0; j < 200; j++) {
+                        tree.file(directory.resolve("f" + j), tree.random.nextInt(513));
+                    }
+                }
+            }
+            case "huge" -> {
+                for (int i = 0; i < 4; i++) {
+                    tree.file(tree.root.resolve("huge" + i), 128L << 20);
+                }
+            }
+            case "deep" -> {
+                Path directory = tree.root;
+                for (int i = 0; i < 64; i++) {
+                    directory = Files.createDirectory(directory.resolve("level" + i));
+                    for (int j = 0; j < 16; j++) {
+                        tree.file(directory.resolve("f" + j), 4096);
+                    }
+                }
+            }
+            case "wide" -> {
+                for (int i = 0; i < 50000; i++) {
+                    tree.file(tree.root.resolve("f" + i), 1024);
+                }
+            }
+            default -> throw new IllegalArgumentException("unknown tree shape " + shape);
+        }
+        Files.write(tree.rootsList(), List.of(tree.root.toString()));
+        Files.write(tree.filesList(), tree.files.stream().map(Path::toString).toList());
+        return tree;
+    }
+
+    private void file(Path path, long size) throws IOException {
+        byte[] chunk = new byte[(int) Math.min(size, 1 << 20)];
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                random.nextBytes(chunk);
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        files.add(path);
+    }
+
+    /**
+     * Input for {@code RecursiveWalk}: the root of the tree.
+     */
+    Path rootsList() {
+        return base.resolve("roots.txt");
+    }
+
+    /**
+     * Input for {@code Walk}: every file of the tree.
+     */
+    Path filesList() {
+        return base.resolve("files.txt");
+    }
+
+    Path output() {
+        return base.resolve("output.txt");
+    }
+
+    void delete() throws IOException {
+        Files.walkFileTree(base, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package info.kgeorgiy.ja.denisov.walk.bench;
+
+import info.kgeorgiy.ja.denisov.walk.BaseWalk;
+import info.kgeorgiy.ja.denisov.walk.WalkException;
+import info.kgeorgiy.ja.denisov.walk.WalkOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@code Walk} (every file listed in the input) and {@code RecursiveWalk} (only the root listed)
+ * over synthetic trees created under {@link #parent}, {@code /dev/shm} by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TraversalBenchmark {
+    @Param({"tiny", "huge", "deep", "wide"})
+    public String shape;
+
+    @Param({"4096", "65536"})
+    public int bufferSize;
+
+    @Param({"sequential", "threads", "virtual"})
+    public String mode;
+
+    @Param({"/dev/shm"})
+    public String parent;
+
+    private SyntheticTree tree;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tree = SyntheticTree.create(Path.of(parent), shape);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        tree.delete();
+    }
+
+    private WalkOptions options() {
+        WalkOptions options = new WalkOptions().bufferSize(bufferSize);
+        return switch (mode) {
+            case "sequential" -> options;
+            case "threads" -> options.threads(Runtime.getRuntime().availableProcessors());
+            case "virtual" -> options.virtualThreads(256);
+            default -> throw new IllegalArgumentException("unknown walk mode " + mode);
+        };
+    }
+
+    @Benchmark
+    public void walk() throws WalkException {
+        new BaseWalk(0, "Walk", options()).walk(tree.filesList(), tree.output());
+    }
+
+    @Benchmark
+    public void recursiveWalk() throws WalkException {
+        new BaseWalk(Integer.MAX_VALUE, "RecursiveWalk", options()).walk(tree.rootsList(), tree.output());
+    }
+}